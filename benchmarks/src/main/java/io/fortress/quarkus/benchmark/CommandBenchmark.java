@@ -0,0 +1,70 @@
+package io.fortress.quarkus.benchmark;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.fortress.quarkus.protobuf.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * protobuf-cluster: Command.TextMessage/BytesMessage 编码与解码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    @Param({"16", "256", "4096"})
+    int size;
+
+    String text;
+    byte[] payload;
+    byte[] textEncoded;
+    byte[] bytesEncoded;
+
+    @Setup
+    public void setup() {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        text = new String(chars);
+        payload = text.getBytes(StandardCharsets.UTF_8);
+        textEncoded = encodeText();
+        bytesEncoded = encodeBytes();
+    }
+
+    @Benchmark
+    public byte[] encodeText() {
+        return Command.TextMessage
+                .newBuilder()
+                .setId(100)
+                .setMessage(text)
+                .build()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeBytes() {
+        return Command.BytesMessage
+                .newBuilder()
+                .setId(100)
+                .setMessage(ByteString.copyFrom(payload))
+                .build()
+                .toByteArray();
+    }
+
+    @Benchmark
+    public Command.TextMessage decodeText() throws InvalidProtocolBufferException {
+        return Command.TextMessage.parseFrom(textEncoded);
+    }
+
+    @Benchmark
+    public Command.BytesMessage decodeBytes() throws InvalidProtocolBufferException {
+        return Command.BytesMessage.parseFrom(bytesEncoded);
+    }
+}
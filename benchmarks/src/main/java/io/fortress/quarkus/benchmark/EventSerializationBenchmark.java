@@ -0,0 +1,136 @@
+package io.fortress.quarkus.benchmark;
+
+import io.fortress.quarkus.chatroom.ChatRoomEventSerializer;
+import io.fortress.quarkus.chatroom.event.BinaryRequestEvent;
+import io.fortress.quarkus.chatroom.event.TextRequestEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chatroom-cluster: Java 序列化与 ChatRoomEventSerializer(protobuf) 对比
+ * <p>
+ * 房间事件本身没有实现 Serializable, Java 序列化使用字段完全相同的 Serializable 记录作为对照;
+ * 每种编码的字节数通过编码方法的辅助计数器 {@link Encoded#bytes} 与耗时一起输出.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSerializationBenchmark {
+
+    public record JavaTextRequest(String nickname, String message, long timestamp) implements Serializable {
+    }
+
+    public record JavaBinaryRequest(String nickname, byte[] message, long timestamp) implements Serializable {
+    }
+
+    /**
+     * 编码后的字节数, 作为辅助计数器原样输出
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Encoded {
+        public long bytes;
+    }
+
+    @Param({"16", "256", "4096"})
+    int size;
+
+    final ChatRoomEventSerializer serializer = new ChatRoomEventSerializer();
+
+    TextRequestEvent text;
+    BinaryRequestEvent binary;
+    JavaTextRequest javaText;
+    JavaBinaryRequest javaBinary;
+
+    byte[] protobufTextEncoded;
+    byte[] protobufBinaryEncoded;
+    byte[] javaTextEncoded;
+    byte[] javaBinaryEncoded;
+
+    @Setup
+    public void setup() throws IOException {
+        char[] chars = new char[size];
+        Arrays.fill(chars, 'x');
+        String message = new String(chars);
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+
+        text = new TextRequestEvent("meteor", message, 1700000000000L);
+        binary = new BinaryRequestEvent("meteor", payload, 1700000000000L);
+        javaText = new JavaTextRequest("meteor", message, 1700000000000L);
+        javaBinary = new JavaBinaryRequest("meteor", payload, 1700000000000L);
+
+        protobufTextEncoded = serializer.toBinary(text);
+        protobufBinaryEncoded = serializer.toBinary(binary);
+        javaTextEncoded = java(javaText);
+        javaBinaryEncoded = java(javaBinary);
+    }
+
+    @Benchmark
+    public byte[] protobufTextEncode(Encoded encoded) {
+        byte[] bytes = serializer.toBinary(text);
+        encoded.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object protobufTextDecode() throws NotSerializableException {
+        return serializer.fromBinary(protobufTextEncoded, serializer.manifest(text));
+    }
+
+    @Benchmark
+    public byte[] protobufBinaryEncode(Encoded encoded) {
+        byte[] bytes = serializer.toBinary(binary);
+        encoded.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object protobufBinaryDecode() throws NotSerializableException {
+        return serializer.fromBinary(protobufBinaryEncoded, serializer.manifest(binary));
+    }
+
+    @Benchmark
+    public byte[] javaTextEncode(Encoded encoded) throws IOException {
+        byte[] bytes = java(javaText);
+        encoded.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object javaTextDecode() throws IOException, ClassNotFoundException {
+        return java(javaTextEncoded);
+    }
+
+    @Benchmark
+    public byte[] javaBinaryEncode(Encoded encoded) throws IOException {
+        byte[] bytes = java(javaBinary);
+        encoded.bytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object javaBinaryDecode() throws IOException, ClassNotFoundException {
+        return java(javaBinaryEncoded);
+    }
+
+    static byte[] java(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object java(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return input.readObject();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.fortress.quarkus.benchmark;
+
+import com.typesafe.config.ConfigFactory;
+import io.fortress.quarkus.chatroom.ChatRoomClusterBootstrap;
+import io.fortress.quarkus.chatroom.ChatRoomClusterConfig;
+import io.fortress.quarkus.chatroom.ChatRoomMetrics;
+import io.fortress.quarkus.chatroom.SessionRegistry;
+import io.fortress.quarkus.chatroom.event.BinaryRequestEvent;
+import io.fortress.quarkus.chatroom.event.JoinRoomBroadcastEvent;
+import io.fortress.quarkus.chatroom.event.TextRequestEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.runtime.configuration.DurationConverter;
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChatRoomDisposer 广播成本随房间人数的变化
+ * <p>
+ * 直接驱动 chatroom-cluster 的 ChatRoomDisposer: 成员以 JoinRoomBroadcastEvent 加入,
+ * 每次操作投递一条房间消息, 等待全部成员收到后结束. 会话 Actor 以只计数的空 Actor 代替,
+ * workers 为 0 时由房间 Actor 自己投递, 否则经过 ChatRoomFanoutWorker 分区投递.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanoutBenchmark {
+
+    static final AtomicLong RECEIVED = new AtomicLong();
+
+    public static class Sink extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .matchAny(message -> RECEIVED.incrementAndGet())
+                    .build();
+        }
+    }
+
+    @Param({"10", "100", "1000", "10000"})
+    int members;
+
+    @Param({"0", "4"})
+    int workers;
+
+    ActorSystem system;
+    ActorRef disposer;
+    String message;
+    byte[] payload;
+
+    @Setup
+    public void setup() {
+        // the disposer subscribes through DistributedPubSub, which needs the cluster provider
+        system = ActorSystem.create("benchmark", ConfigFactory.parseString("""
+                pekko.loglevel = WARNING
+                pekko.actor.provider = cluster
+                pekko.remote.artery.canonical.hostname = 127.0.0.1
+                pekko.remote.artery.canonical.port = 0
+                """).withFallback(ConfigFactory.load()));
+
+        ActorRef[] fanout = new ActorRef[workers];
+        for (int i = 0; i < workers; i++) {
+            fanout[i] = system.actorOf(Props.create(ChatRoomClusterBootstrap.ChatRoomFanoutWorker.class, ChatRoomClusterBootstrap.ChatRoomFanoutWorker::new), "fanout-" + i);
+        }
+        ChatRoomClusterConfig.Room room = room();
+        ChatRoomMetrics metrics = new ChatRoomMetrics(new SimpleMeterRegistry(), new SessionRegistry());
+        ActorRef region = system.deadLetters();
+        disposer = system.actorOf(Props.create(ChatRoomClusterBootstrap.ChatRoomDisposer.class,
+                () -> new ChatRoomClusterBootstrap.ChatRoomDisposer("lobby", region, room, fanout, metrics)), "lobby");
+
+        for (int i = 0; i < members; i++) {
+            ActorRef session = system.actorOf(Props.create(Sink.class, Sink::new), "session-" + i);
+            disposer.tell(new JoinRoomBroadcastEvent("lobby", "user-" + i), session);
+        }
+        message = "hello world, this is a chat message";
+        payload = message.getBytes(StandardCharsets.UTF_8);
+
+        // the joins are processed before the first measured message
+        broadcast(new TextRequestEvent("meteor", message, 0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        system.terminate();
+    }
+
+    @Benchmark
+    public void text() {
+        broadcast(new TextRequestEvent("meteor", message, 0));
+    }
+
+    @Benchmark
+    public void binary() {
+        broadcast(new BinaryRequestEvent("meteor", payload, 0));
+    }
+
+    void broadcast(Object event) {
+        long expected = RECEIVED.get() + members;
+        disposer.tell(event, ActorRef.noSender());
+        while (RECEIVED.get() < expected) Thread.onSpinWait();
+    }
+
+    /**
+     * 房间配置: 不批处理, 不保存历史, 不持久化, 不广播 join/leave, 只测量消息扇出
+     */
+    ChatRoomClusterConfig.Room room() {
+        Map<String, String> properties = Map.of(
+                "chatroom.room.batch.enabled", "false",
+                "chatroom.room.history.size", "0",
+                "chatroom.room.persistence.enabled", "false",
+                "chatroom.room.fanout.workers", String.valueOf(workers),
+                "chatroom.room.presence.announce", "false"
+        );
+        return new SmallRyeConfigBuilder()
+                .withMapping(ChatRoomClusterConfig.class)
+                .withConverter(Duration.class, 100, new DurationConverter())
+                .withSources(new PropertiesConfigSource(properties, "benchmark", 100))
+                .build()
+                .getConfigMapping(ChatRoomClusterConfig.class)
+                .room();
+    }
+}
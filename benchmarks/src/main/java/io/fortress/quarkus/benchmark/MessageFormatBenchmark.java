@@ -0,0 +1,40 @@
+package io.fortress.quarkus.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatRoomDisposer 广播文本拼接: String.formatted 与直接拼接对比
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFormatBenchmark {
+
+    String name = "lobby";
+    String nickname = "meteor";
+    String message = "hello world, this is a chat message";
+
+    @Benchmark
+    public String formatted() {
+        return "[%s] %s: %s".formatted(name, nickname, message);
+    }
+
+    @Benchmark
+    public String concat() {
+        return "[" + name + "] " + nickname + ": " + message;
+    }
+
+    @Benchmark
+    public String builder() {
+        return new StringBuilder(name.length() + nickname.length() + message.length() + 5)
+                .append('[').append(name).append("] ")
+                .append(nickname).append(": ")
+                .append(message)
+                .toString();
+    }
+}
@@ -0,0 +1,54 @@
+package io.fortress.quarkus.chatroom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 房间广播批次
+ * <p>
+ * 在一个时间窗口内收集文本消息, 合并为一个 JSON 字符串数组帧发送给每个成员,
+ * N 条消息 × M 个成员的帧数量降为 M.
+ * 只能在所属 Actor 内部访问, 非线程安全.
+ */
+public final class ChatRoomBatch {
+
+    final int maxMessages;
+    final List<String> messages;
+    int length;
+
+    public ChatRoomBatch(int maxMessages) {
+        this.maxMessages = maxMessages;
+        this.messages = new ArrayList<>(maxMessages);
+    }
+
+    /**
+     * 加入消息, 达到 maxMessages 时返回 true
+     */
+    public boolean add(String message) {
+        messages.add(message);
+        length += message.length() + 3;
+        return messages.size() >= maxMessages;
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    /**
+     * 输出 JSON 字符串数组并清空批次
+     */
+    public String drain() {
+        StringBuilder builder = new StringBuilder(length + 2).append('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) builder.append(',');
+            ChatRoomJson.quote(builder, messages.get(i));
+        }
+        messages.clear();
+        length = 0;
+        return builder.append(']').toString();
+    }
+}
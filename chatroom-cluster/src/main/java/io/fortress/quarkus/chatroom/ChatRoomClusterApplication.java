@@ -1,15 +1,15 @@
-package io.fortress.quarkus.chatroom;
-
-
-import io.quarkus.runtime.Quarkus;
-import io.quarkus.runtime.annotations.QuarkusMain;
-
-/**
- * io.fortress.quarkus.chatroom.ChatRoomClusterApplication.java
- */
-@QuarkusMain
-public class ChatRoomClusterApplication {
-    public static void main(String[] args) {
-        Quarkus.run(args);
-    }
-}
+package io.fortress.quarkus.chatroom;
+
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.annotations.QuarkusMain;
+
+/**
+ * io.fortress.quarkus.chatroom.ChatRoomClusterApplication.java
+ */
+@QuarkusMain
+public class ChatRoomClusterApplication {
+    public static void main(String[] args) {
+        Quarkus.run(args);
+    }
+}
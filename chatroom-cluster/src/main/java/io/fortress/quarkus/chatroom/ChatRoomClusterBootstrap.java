@@ -1,209 +1,948 @@
-package io.fortress.quarkus.chatroom;
-
-import io.fortress.quarkus.chatroom.event.*;
-import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
-import io.quarkus.runtime.Quarkus;
-import io.quarkus.runtime.Startup;
-import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.enterprise.inject.Default;
-import jakarta.enterprise.inject.Produces;
-import org.apache.pekko.actor.AbstractActor;
-import org.apache.pekko.actor.ActorRef;
-import org.apache.pekko.actor.ActorSelection;
-import org.apache.pekko.actor.ActorSystem;
-import org.apache.pekko.cluster.Cluster;
-import org.apache.pekko.cluster.ClusterEvent;
-import org.apache.pekko.cluster.Member;
-import org.apache.pekko.cluster.MemberStatus;
-import org.apache.pekko.cluster.pubsub.DistributedPubSub;
-import org.apache.pekko.cluster.pubsub.DistributedPubSubMediator;
-import org.apache.pekko.event.LoggingAdapter;
-import org.apache.pekko.management.javadsl.PekkoManagement;
-
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-@ApplicationScoped
-public class ChatRoomClusterBootstrap {
-
-    public static final class Bootstrap {
-
-
-        public ActorRef getAddress() {
-            return address;
-        }
-
-
-        public Cluster getCluster() {
-            return cluster;
-        }
-
-        private final ActorRef address;
-
-        private final Cluster cluster;
-
-        public Bootstrap(ActorRef address, Cluster cluster) {
-            this.address = address;
-            this.cluster = cluster;
-        }
-    }
-
-
-    @Startup
-    @Default
-    @Produces
-    @ApplicationScoped
-    public Bootstrap createBootstrap(ActorContainer container) {
-        ActorSystem system = container.system();
-        Cluster cluster = Cluster.get(system);
-        PekkoManagement management = PekkoManagement.get(system);
-        String name = "%s-room".formatted(system.name());
-        ActorRef room = container.injectOf(name, ChatRoomDisposer.class, () -> new ChatRoomDisposer(name));
-
-        cluster.registerOnMemberUp(() -> {
-            management.start();
-
-        });
-
-        cluster.registerOnMemberRemoved(() -> {
-
-            management.stop();
-            Quarkus.asyncExit(1);
-        });
-
-
-        return new Bootstrap(room, cluster);
-    }
-
-
-    public static class ChatRoomDisposer extends AbstractActor {
-
-        final String name;
-        final Cluster cluster = Cluster.get(context().system());
-        final LoggingAdapter log = context().system().log();
-        final List<ActorRef> actors = new ArrayList<>();
-        final DistributedPubSub distributed = DistributedPubSub.get(context().system());
-
-        public ChatRoomDisposer(String name) {
-            this.name = name;
-        }
-
-        @Override
-        public void preStart() {
-            cluster.subscribe(
-                    getSelf(),
-                    ClusterEvent.initialStateAsEvents(),
-                    ClusterEvent.MemberUp.class,
-                    ClusterEvent.MemberRemoved.class,
-                    ClusterEvent.ReachableMember.class,
-                    ClusterEvent.UnreachableMember.class
-            );
-
-            // subscribe
-            distributed.mediator().tell(
-                    new DistributedPubSubMediator.Subscribe(name, getSelf()),
-                    getSelf()
-            );
-        }
-
-        @Override
-        public Receive createReceive() {
-            return receiveBuilder()
-                    .match(ClusterEvent.MemberUp.class, memberUp -> {
-                        Member active = memberUp.member();
-                        log.info("Join member: {}", active.address());
-                    })
-                    .match(ClusterEvent.MemberRemoved.class, memberRemoved -> {
-                        Member active = memberRemoved.member();
-                        log.info("Leave member: {}", active.address());
-                    })
-                    .match(ClusterEvent.ReachableMember.class, reachableMember -> {
-                        Member active = reachableMember.member();
-                        log.info("Reachable member: {}", active.address());
-                    })
-                    .match(ClusterEvent.UnreachableMember.class, unreachableMember -> {
-                        Member active = unreachableMember.member();
-                        log.info("Unreachable member: {}", active.address());
-                    })
-
-                    // broadcast - join room
-                    .match(JoinRoomBroadcastEvent.class, event -> {
-                        ActorRef sender = getSender();
-                        actors.add(sender);
-                        log.info("Join Room: {}", sender.path());
-
-                        // publish
-                        distributed.mediator().tell(new DistributedPubSubMediator.Publish(
-                                name,
-                                new JoinRoomEvent(event.nickname())
-                        ), getSelf());
-                    })
-
-                    //  broadcast - leave room
-                    .match(LeaveRoomBroadcastEvent.class, event -> {
-                        ActorRef sender = getSender();
-                        actors.remove(sender);
-                        log.info("Leave Room: {}", sender.path());
-                        // publish
-                        distributed.mediator().tell(new DistributedPubSubMediator.Publish(
-                                name,
-                                new LeaveRoomEvent(event.nickname())
-                        ), getSelf());
-                    })
-
-
-                    // broadcast - text message
-                    .match(TextRequestBroadcastEvent.class, request -> {
-                        // publish
-                        distributed.mediator().tell(new DistributedPubSubMediator.Publish(
-                                name,
-                                new TextRequestEvent(request.nickname(), request.message())
-                        ), getSelf());
-                    })
-
-                    // broadcast - binary message
-                    .match(BinaryRequestBroadcastEvent.class, request -> {
-                        // publish
-                        distributed.mediator().tell(new DistributedPubSubMediator.Publish(
-                                name,
-                                new BinaryRequestEvent(request.nickname(), request.message())
-                        ), getSelf());
-                    })
-
-
-                    // event - join room
-                    .match(JoinRoomEvent.class, event -> {
-                        String recv = "[%s] %s - join room".formatted(name, event.nickname());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                    })
-
-                    // event - leave room
-                    .match(LeaveRoomEvent.class, event -> {
-                        String recv = "[%s] %s - leave room".formatted(name, event.nickname());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                    })
-
-
-                    // event - text message
-                    .match(TextRequestEvent.class, (event) -> {
-                        ActorRef sender = getSender();
-                        log.info("Forward TextMessage By {}, Total: {}", sender.path(), actors.size());
-                        String recv = "[%s] %s: %s".formatted(name, event.nickname(), event.message());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                    })
-
-                    // event - binary message
-                    .match(BinaryRequestEvent.class, (event) -> {
-                        ActorRef sender = getSender();
-                        log.info("Forward BinaryMessage By {}, Total: {}", sender.path(), actors.size());
-                        String recv = "[%s] %s: %s".formatted(name, event.nickname(), Arrays.toString(event.message()));
-                        actors.forEach(actor -> actor.tell(new BinaryResponseEvent(recv.getBytes(StandardCharsets.UTF_8)), ActorRef.noSender()));
-                    })
-
-                    .build();
-        }
-    }
-
-}
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.Startup;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Default;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import org.apache.pekko.Done;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.AbstractActorWithTimers;
+import org.apache.pekko.actor.Address;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.CoordinatedShutdown;
+import org.apache.pekko.actor.PoisonPill;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.cluster.Cluster;
+import org.apache.pekko.cluster.ClusterEvent;
+import org.apache.pekko.cluster.ddata.DistributedData;
+import org.apache.pekko.cluster.ddata.ORMultiMap;
+import org.apache.pekko.cluster.ddata.ORMultiMapKey;
+import org.apache.pekko.cluster.ddata.PNCounterMap;
+import org.apache.pekko.cluster.ddata.PNCounterMapKey;
+import org.apache.pekko.cluster.ddata.Replicator;
+import org.apache.pekko.cluster.ddata.SelfUniqueAddress;
+import org.apache.pekko.cluster.Member;
+import org.apache.pekko.cluster.pubsub.DistributedPubSub;
+import org.apache.pekko.cluster.pubsub.DistributedPubSubMediator;
+import org.apache.pekko.cluster.sharding.ClusterSharding;
+import org.apache.pekko.cluster.sharding.ClusterShardingSettings;
+import org.apache.pekko.cluster.sharding.ShardRegion;
+import org.apache.pekko.event.LoggingAdapter;
+import org.apache.pekko.management.javadsl.PekkoManagement;
+import org.apache.pekko.persistence.AbstractPersistentActor;
+import org.apache.pekko.persistence.DeleteMessagesFailure;
+import org.apache.pekko.persistence.DeleteMessagesSuccess;
+import org.apache.pekko.persistence.DeleteSnapshotsFailure;
+import org.apache.pekko.persistence.DeleteSnapshotsSuccess;
+import org.apache.pekko.persistence.RecoveryCompleted;
+import org.apache.pekko.persistence.SaveSnapshotFailure;
+import org.apache.pekko.persistence.SaveSnapshotSuccess;
+import org.apache.pekko.persistence.SnapshotOffer;
+import org.apache.pekko.persistence.SnapshotSelectionCriteria;
+import scala.Option;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+@ApplicationScoped
+public class ChatRoomClusterBootstrap {
+
+    /**
+     * 分片类型名称
+     */
+    public static final String SHARDING_TYPE = "ChatRoom";
+
+    public static final class Bootstrap {
+
+
+        public ActorRef getAddress() {
+            return address;
+        }
+
+        /**
+         * 房间实体的分片区域, 不需要房间实体时没有启动, 为 null
+         */
+        public ActorRef getRegion() {
+            return region;
+        }
+
+        public Cluster getCluster() {
+            return cluster;
+        }
+
+        public ActorRef getPresence() {
+            return presence;
+        }
+
+        private final ActorRef address;
+
+        private final ActorRef region;
+
+        private final Cluster cluster;
+
+        private final ActorRef presence;
+
+        public Bootstrap(ActorRef address, ActorRef region, Cluster cluster, ActorRef presence) {
+            this.address = address;
+            this.region = region;
+            this.cluster = cluster;
+            this.presence = presence;
+        }
+    }
+
+
+    /**
+     * 房间在 DistributedPubSub 中的主题, 只有存在本地成员的节点才会订阅
+     */
+    public static String topicOf(ActorSystem system, String room) {
+        return "%s-room-%s".formatted(system.name(), room);
+    }
+
+
+    @Startup
+    @Default
+    @Produces
+    @ApplicationScoped
+    public Bootstrap createBootstrap(ActorContainer container, ChatRoomClusterConfig config, ChatRoomDrain drain) {
+        ActorSystem system = container.system();
+        Cluster cluster = Cluster.get(system);
+        PekkoManagement management = PekkoManagement.get(system);
+
+        // sessions pick the dispatcher up through the /user/session-* deployment, a typo fails here instead of on the first connection
+        String dispatcher = config.session().dispatcher();
+        if (!system.dispatchers().hasDispatcher(dispatcher)) {
+            throw new IllegalStateException("Unknown chatroom.session.dispatcher: " + dispatcher);
+        }
+
+        String name = "%s-room".formatted(system.name());
+        ChatRoomClusterConfig.Room room = config.room();
+
+        // room entities are hosted by cluster sharding, one entity per room id; messages go straight to the room topic,
+        // the entity only writes member changes, so the region is started only when they are announced or persisted
+        ActorRef region = relay(room) ? ClusterSharding.get(system).start(
+                SHARDING_TYPE,
+                entityProps(room),
+                ClusterShardingSettings.create(system),
+                new ChatRoomExtractor(config.sharding().numberOfShards())
+        ) : null;
+
+        // node-level fan-out workers shared by all local rooms
+        ActorRef[] workers = new ActorRef[room.fanout().workers()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = system.actorOf(Props.create(ChatRoomFanoutWorker.class, ChatRoomFanoutWorker::new), "%s-fanout-%d".formatted(name, i));
+        }
+        ActorRef presence = system.actorOf(Props.create(ChatRoomPresence.class, () -> new ChatRoomPresence(room.presence())), "%s-presence".formatted(name));
+        ActorRef router = container.injectOf(name, ChatRoomRouter.class, () -> new ChatRoomRouter(region, room, workers, presence));
+
+        cluster.registerOnMemberUp(() -> {
+            management.start();
+
+        });
+
+        // leaving (deploy, management leave, downing) runs coordinated shutdown: sessions are drained before cluster-leave
+        CoordinatedShutdown shutdown = CoordinatedShutdown.get(system);
+        shutdown.addTask(CoordinatedShutdown.PhaseServiceUnbind(), "chatroom-stop-accepting", () -> {
+            drain.stopAccepting();
+            return CompletableFuture.completedFuture(Done.getInstance());
+        });
+        shutdown.addTask(CoordinatedShutdown.PhaseServiceRequestsDone(), "chatroom-drain", () -> drain.drain()
+                .onFailure().recoverWithNull()
+                .replaceWith(Done.getInstance())
+                .subscribeAsCompletionStage());
+
+        // removed from the cluster: sessions are already drained, exit; only downing or an unplanned removal is a failure
+        cluster.registerOnMemberRemoved(() -> {
+            management.stop();
+            Quarkus.asyncExit(shutdown.getShutdownReason().map(ChatRoomClusterBootstrap::planned).orElse(false) ? 0 : 1);
+        });
+
+
+        return new Bootstrap(router, region, cluster, presence);
+    }
+
+
+    /**
+     * 成员变化是否需要经过房间实体: 广播 join/leave 或者持久化成员时才需要
+     */
+    static boolean relay(ChatRoomClusterConfig.Room room) {
+        return room.presence().announce() || room.persistence().enabled();
+    }
+
+
+    /**
+     * 正常离开集群或进程退出触发的关闭, 被 down 等其他原因返回 false
+     */
+    static boolean planned(CoordinatedShutdown.Reason reason) {
+        return reason.equals(CoordinatedShutdown.clusterLeavingReason())
+                || reason.equals(CoordinatedShutdown.jvmExitReason())
+                || reason.equals(CoordinatedShutdown.actorSystemTerminateReason());
+    }
+
+
+    /**
+     * 房间实体, 开启持久化时使用事件溯源的实体
+     */
+    static Props entityProps(ChatRoomClusterConfig.Room room) {
+        if (!room.persistence().enabled()) return Props.create(ChatRoomEntity.class, ChatRoomEntity::new);
+        int snapshotEvery = room.persistence().snapshotEvery();
+        int historySize = room.history().size();
+        return Props.create(PersistentChatRoomEntity.class, () -> new PersistentChatRoomEntity(snapshotEvery, historySize));
+    }
+
+
+    /**
+     * 按房间ID分片
+     */
+    public static class ChatRoomExtractor extends ShardRegion.HashCodeMessageExtractor {
+
+        public ChatRoomExtractor(int maxNumberOfShards) {
+            super(maxNumberOfShards);
+        }
+
+        @Override
+        public String entityId(Object message) {
+            if (message instanceof IRoomEvent event) return event.room();
+            return null;
+        }
+    }
+
+
+    /**
+     * 分片房间实体: 成员变化的唯一写入者, 把 join/leave 发布到该房间的主题; 消息由会话直接发布到主题, 不经过实体
+     */
+    public static class ChatRoomEntity extends AbstractActor {
+
+        final LoggingAdapter log = context().system().log();
+        final DistributedPubSub distributed = DistributedPubSub.get(context().system());
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(JoinRoomBroadcastEvent.class, event -> publish(event.room(), new JoinRoomEvent(event.nickname())))
+                    .match(LeaveRoomBroadcastEvent.class, event -> publish(event.room(), new LeaveRoomEvent(event.nickname())))
+                    .build();
+        }
+
+        void publish(String room, IEvent event) {
+            distributed.mediator().tell(new DistributedPubSubMediator.Publish(
+                    topicOf(context().system(), room),
+                    event
+            ), getSelf());
+        }
+    }
+
+
+    /**
+     * 事件溯源的房间实体: 成员变化先持久化再发布到房间主题; 消息由会话直接发布到主题, 实体同样订阅该主题,
+     * 把消息写入日志并保留最近 historySize 条, 本节点的房间启动时以 {@link RoomHistoryQueryEvent} 取回, 重启或分片迁移后历史不丢失.
+     * 每 snapshotEvery 个事件保存一次快照(成员和最近消息), 并删除快照之前的事件.
+     * <p>
+     * 成员按所在节点记录, 恢复后和集群当前成员核对, 已经不在集群中的节点上的成员作为离开写入并发布,
+     * 之后每次节点被移除也同样处理. 默认的 leveldb 日志只在本节点, 分片迁移到其他节点后从空状态开始,
+     * 跨节点恢复需要把日志和快照配置到共享存储.
+     */
+    public static class PersistentChatRoomEntity extends AbstractPersistentActor {
+
+        final LoggingAdapter log = context().system().log();
+        final DistributedPubSub distributed = DistributedPubSub.get(context().system());
+        final Cluster cluster = Cluster.get(context().system());
+        final String room = getSelf().path().name();
+        final int snapshotEvery;
+        final int historySize;
+
+        /**
+         * "节点/昵称" -> 连接数量
+         */
+        final Map<String, Integer> members = new HashMap<>();
+
+        /**
+         * 最近消息, 从旧到新, TextRequestEvent / BinaryRequestEvent
+         */
+        final Deque<IEvent> messages = new ArrayDeque<>();
+
+        public PersistentChatRoomEntity(int snapshotEvery, int historySize) {
+            this.snapshotEvery = snapshotEvery;
+            this.historySize = historySize;
+        }
+
+        @Override
+        public String persistenceId() {
+            return SHARDING_TYPE + "-" + room;
+        }
+
+        @Override
+        public void preStart() {
+            // the initial snapshot is stashed until recovery completes, so it is checked against the recovered members
+            cluster.subscribe(getSelf(), ClusterEvent.initialStateAsSnapshot(), ClusterEvent.MemberRemoved.class);
+
+            // the room's messages are journaled from its topic, only while there is a history to serve
+            if (historySize > 0) distributed.mediator().tell(new DistributedPubSubMediator.Subscribe(topicOf(context().system(), room), getSelf()), getSelf());
+        }
+
+        @Override
+        public void postStop() {
+            cluster.unsubscribe(getSelf());
+            if (historySize > 0) distributed.mediator().tell(new DistributedPubSubMediator.Unsubscribe(topicOf(context().system(), room), getSelf()), getSelf());
+        }
+
+        @Override
+        public Receive createReceiveRecover() {
+            return receiveBuilder()
+                    .match(SnapshotOffer.class, offer -> {
+                        RoomSnapshot snapshot = (RoomSnapshot) offer.snapshot();
+                        members.clear();
+                        members.putAll(snapshot.members());
+                        messages.clear();
+                        snapshot.messages().forEach(this::remember);
+                    })
+                    .match(RoomMemberEvent.class, this::apply)
+                    .match(TextRequestEvent.class, this::remember)
+                    .match(BinaryRequestEvent.class, this::remember)
+                    .match(RecoveryCompleted.class, completed -> log.info("Recovered Room: {}, Members: {}, Messages: {}", room, members.size(), messages.size()))
+                    .build();
+        }
+
+        @Override
+        public Receive createReceive() {
+            // persistAsync keeps the entity accepting while the journal batches writes, handlers still run in order
+            return receiveBuilder()
+                    .match(JoinRoomBroadcastEvent.class, event -> persistAsync(new RoomMemberEvent(room, nodeOf(getSender()), event.nickname(), 1), persisted -> {
+                        applied(persisted);
+                        publish(new JoinRoomEvent(persisted.nickname()));
+                    }))
+                    .match(LeaveRoomBroadcastEvent.class, event -> persistAsync(new RoomMemberEvent(room, nodeOf(getSender()), event.nickname(), -1), persisted -> {
+                        applied(persisted);
+                        publish(new LeaveRoomEvent(persisted.nickname()));
+                    }))
+
+                    // topic - message, journaled for the history of disposers started later
+                    .match(TextRequestEvent.class, event -> persistAsync(event, this::journaled))
+                    .match(BinaryRequestEvent.class, event -> persistAsync(event, this::journaled))
+                    .match(RoomHistoryQueryEvent.class, query -> getSender().tell(new RoomHistoryEvent(room, List.copyOf(messages)), getSelf()))
+
+                    // its own join/leave publications come back through the topic
+                    .match(JoinRoomEvent.class, event -> {
+                    })
+                    .match(LeaveRoomEvent.class, event -> {
+                    })
+                    .match(DistributedPubSubMediator.SubscribeAck.class, ack -> log.debug("Subscribe Room: {}", room))
+                    .match(DistributedPubSubMediator.UnsubscribeAck.class, ack -> log.debug("Unsubscribe Room: {}", room))
+
+                    // members of nodes that left the cluster never send their leave
+                    .match(ClusterEvent.CurrentClusterState.class, state -> {
+                        Set<String> live = new HashSet<>();
+                        for (Member member : state.getMembers()) live.add(member.address().hostPort());
+                        Set<String> nodes = new HashSet<>();
+                        for (String key : members.keySet()) nodes.add(key.substring(0, key.indexOf('/')));
+                        for (String node : nodes) {
+                            if (!live.contains(node)) remove(node);
+                        }
+                    })
+                    .match(ClusterEvent.MemberRemoved.class, removed -> remove(removed.member().address().hostPort()))
+
+                    // events and older snapshots are superseded by the one just saved
+                    .match(SaveSnapshotSuccess.class, success -> {
+                        long sequenceNr = success.metadata().sequenceNr();
+                        deleteMessages(sequenceNr);
+                        deleteSnapshots(SnapshotSelectionCriteria.create(sequenceNr - 1, Long.MAX_VALUE));
+                    })
+                    .match(SaveSnapshotFailure.class, failure -> log.warning("Save Snapshot Failed: {}, {}", room, failure.cause().getMessage()))
+                    .match(DeleteMessagesSuccess.class, success -> log.debug("Delete Messages: {}, To: {}", room, success.toSequenceNr()))
+                    .match(DeleteMessagesFailure.class, failure -> log.warning("Delete Messages Failed: {}, {}", room, failure.cause().getMessage()))
+                    .match(DeleteSnapshotsSuccess.class, success -> log.debug("Delete Snapshots: {}", room))
+                    .match(DeleteSnapshotsFailure.class, failure -> log.warning("Delete Snapshots Failed: {}, {}", room, failure.cause().getMessage()))
+                    .build();
+        }
+
+        /**
+         * 发送者所在节点, 本地发送者的地址不带 host:port
+         */
+        String nodeOf(ActorRef sender) {
+            Address address = sender.path().address();
+            return (address.hasGlobalScope() ? address : cluster.selfAddress()).hostPort();
+        }
+
+        /**
+         * 移除一个节点上的全部成员
+         */
+        void remove(String node) {
+            String prefix = node + "/";
+            List<RoomMemberEvent> removed = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : members.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) removed.add(new RoomMemberEvent(room, node, entry.getKey().substring(prefix.length()), -entry.getValue()));
+            }
+            if (removed.isEmpty()) return;
+            log.info("Remove {} members of {} from Room: {}", removed.size(), node, room);
+
+            // persistAll stashes commands until applied, a repeated removal of the same node finds nothing left
+            persistAll(removed, persisted -> {
+                applied(persisted);
+                publish(new LeaveRoomEvent(persisted.nickname()));
+            });
+        }
+
+        void apply(RoomMemberEvent event) {
+            members.compute(event.node() + "/" + event.nickname(), (key, count) -> {
+                int value = (Objects.isNull(count) ? 0 : count) + event.count();
+                return value > 0 ? value : null;
+            });
+        }
+
+        void applied(RoomMemberEvent event) {
+            apply(event);
+            snapshot();
+        }
+
+        void remember(IEvent message) {
+            messages.addLast(message);
+            while (messages.size() > historySize) messages.pollFirst();
+        }
+
+        void journaled(IEvent message) {
+            remember(message);
+            snapshot();
+        }
+
+        void snapshot() {
+            if (lastSequenceNr() % snapshotEvery == 0) saveSnapshot(new RoomSnapshot(room, Map.copyOf(members), List.copyOf(messages)));
+        }
+
+        void publish(IEvent event) {
+            distributed.mediator().tell(new DistributedPubSubMediator.Publish(
+                    topicOf(context().system(), room),
+                    event
+            ), getSelf());
+        }
+    }
+
+
+    /**
+     * 节点级路由: 为存在本地成员的房间创建 ChatRoomDisposer, 最后一个成员离开并经过 history.linger 后回收
+     */
+    public static class ChatRoomRouter extends AbstractActorWithTimers {
+
+        @Inject
+        ChatRoomMetrics metrics;
+
+        final ActorRef region;
+        final ChatRoomClusterConfig.Room room;
+        final ActorRef[] workers;
+        final ActorRef presence;
+        final Cluster cluster = Cluster.get(context().system());
+        final LoggingAdapter log = context().system().log();
+        final Map<String, ActorRef> rooms = new HashMap<>();
+        final Map<String, Integer> members = new HashMap<>();
+
+        public ChatRoomRouter(ActorRef region, ChatRoomClusterConfig.Room room, ActorRef[] workers, ActorRef presence) {
+            this.region = region;
+            this.room = room;
+            this.workers = workers;
+            this.presence = presence;
+        }
+
+        @Override
+        public void preStart() {
+            cluster.subscribe(
+                    getSelf(),
+                    ClusterEvent.initialStateAsEvents(),
+                    ClusterEvent.MemberUp.class,
+                    ClusterEvent.MemberRemoved.class,
+                    ClusterEvent.ReachableMember.class,
+                    ClusterEvent.UnreachableMember.class
+            );
+        }
+
+        @Override
+        public void postStop() {
+            cluster.unsubscribe(getSelf());
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(ClusterEvent.MemberUp.class, memberUp -> {
+                        Member active = memberUp.member();
+                        log.info("Join member: {}", active.address());
+                    })
+                    .match(ClusterEvent.MemberRemoved.class, memberRemoved -> {
+                        Member active = memberRemoved.member();
+                        log.info("Leave member: {}", active.address());
+                    })
+                    .match(ClusterEvent.ReachableMember.class, reachableMember -> {
+                        Member active = reachableMember.member();
+                        log.info("Reachable member: {}", active.address());
+                    })
+                    .match(ClusterEvent.UnreachableMember.class, unreachableMember -> {
+                        Member active = unreachableMember.member();
+                        log.info("Unreachable member: {}", active.address());
+                    })
+
+                    // local - join room
+                    .match(JoinRoomBroadcastEvent.class, event -> {
+                        ActorRef disposer = rooms.computeIfAbsent(event.room(), id -> getContext().actorOf(
+                                Props.create(ChatRoomDisposer.class, () -> new ChatRoomDisposer(id, region, room, workers, metrics))
+                        ));
+                        members.merge(event.room(), 1, Integer::sum);
+                        getTimers().cancel(event.room());
+                        disposer.forward(event, getContext());
+                        presence.forward(event, getContext());
+                    })
+
+                    // local - leave room
+                    .match(LeaveRoomBroadcastEvent.class, event -> {
+                        presence.forward(event, getContext());
+                        ActorRef disposer = rooms.get(event.room());
+                        if (Objects.isNull(disposer)) return;
+                        disposer.forward(event, getContext());
+
+                        // last local member: unsubscribe the topic by stopping the disposer, after the history linger
+                        if (members.merge(event.room(), -1, Integer::sum) <= 0) {
+                            members.remove(event.room());
+                            Duration linger = room.history().linger();
+                            if (room.history().size() > 0 && !linger.isZero()) getTimers().startSingleTimer(event.room(), new RoomIdleEvent(event.room()), linger);
+                            else stop(event.room());
+                        }
+                    })
+                    .match(RoomIdleEvent.class, event -> {
+                        if (!members.containsKey(event.room())) stop(event.room());
+                    })
+                    .build();
+        }
+
+        void stop(String id) {
+            ActorRef disposer = rooms.remove(id);
+            if (!Objects.isNull(disposer)) disposer.tell(PoisonPill.getInstance(), getSelf());
+        }
+    }
+
+
+    public static class ChatRoomDisposer extends AbstractActorWithTimers {
+
+        static final String FLUSH = "flush";
+        static final String SEED = "seed";
+
+        final String name;
+        final ActorRef region;
+        final LoggingAdapter log = context().system().log();
+        final ChatRoomMembers actors = new ChatRoomMembers();
+        final DistributedPubSub distributed = DistributedPubSub.get(context().system());
+        final Duration window;
+        final ChatRoomBatch batch;
+        final ChatRoomHistory history;
+        final ChatRoomMetrics metrics;
+        final ActorRef[] workers;
+        final boolean announce;
+
+        /**
+         * 成员变化是否需要经过房间实体, 为 false 时没有启动分片, region 为 null
+         */
+        final boolean relay;
+        final Duration seedTimeout;
+
+        /**
+         * 等待房间实体返回日志中的最近消息, 期间不订阅主题, 加入的成员在取回后统一重放
+         */
+        boolean seeding;
+        ActorRef[][] partitions;
+
+        public ChatRoomDisposer(String name, ActorRef region, ChatRoomClusterConfig.Room room, ActorRef[] workers, ChatRoomMetrics metrics) {
+            this.name = name;
+            this.region = region;
+            this.workers = workers;
+            this.metrics = metrics;
+            this.window = room.batch().window();
+            this.batch = room.batch().enabled() ? new ChatRoomBatch(room.batch().maxMessages()) : null;
+            this.history = room.history().size() > 0 ? new ChatRoomHistory(room.history().size()) : null;
+            this.announce = room.presence().announce();
+            this.relay = relay(room);
+            this.seedTimeout = room.persistence().seedTimeout();
+            this.seeding = room.persistence().enabled() && !Objects.isNull(history);
+        }
+
+        @Override
+        public void preStart() {
+            if (!seeding) {
+                subscribe();
+                return;
+            }
+
+            // the history starts from the journal tail, an entity that does not answer in time leaves it empty
+            region.tell(new RoomHistoryQueryEvent(name), getSelf());
+            getTimers().startSingleTimer(SEED, new RoomHistoryEvent(name, List.of()), seedTimeout);
+        }
+
+        void subscribe() {
+            distributed.mediator().tell(
+                    new DistributedPubSubMediator.Subscribe(topicOf(context().system(), name), getSelf()),
+                    getSelf()
+            );
+        }
+
+        @Override
+        public void postStop() {
+            // unsubscribe
+            distributed.mediator().tell(
+                    new DistributedPubSubMediator.Unsubscribe(topicOf(context().system(), name), getSelf()),
+                    getSelf()
+            );
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(DistributedPubSubMediator.SubscribeAck.class, ack -> log.debug("Subscribe Room: {}", name))
+                    .match(DistributedPubSubMediator.UnsubscribeAck.class, ack -> log.debug("Unsubscribe Room: {}", name))
+
+                    // broadcast - join room
+                    .match(JoinRoomBroadcastEvent.class, event -> {
+                        ActorRef sender = getSender();
+                        if (actors.contains(sender)) return;
+
+                        // the pending batch goes out before the member is added, the replay already covers it
+                        flush();
+                        actors.add(sender, event.nickname());
+                        partitions = null;
+                        if (!seeding) replay(sender);
+                        log.info("Join Room: {}", sender.path());
+                        if (relay) region.tell(event, getSelf());
+                    })
+
+                    //  broadcast - leave room
+                    .match(LeaveRoomBroadcastEvent.class, event -> {
+                        ActorRef sender = getSender();
+                        if (Objects.isNull(actors.remove(sender))) return;
+                        partitions = null;
+                        log.info("Leave Room: {}", sender.path());
+                        if (relay) region.tell(event, getSelf());
+                    })
+
+
+                    // event - join room
+                    .match(JoinRoomEvent.class, event -> {
+                        if (announce) broadcast("[%s] %s - join room".formatted(name, event.nickname()), false);
+                    })
+
+                    // event - leave room
+                    .match(LeaveRoomEvent.class, event -> {
+                        if (announce) broadcast("[%s] %s - leave room".formatted(name, event.nickname()), false);
+                    })
+
+
+                    // event - text message
+                    .match(TextRequestEvent.class, (event) -> {
+                        if (log.isDebugEnabled()) log.debug("Forward TextMessage By {}, Total: {}", getSender().path(), actors.size());
+                        metrics.broadcast(event.timestamp(), actors.size());
+                        broadcast("[%s] %s: %s".formatted(name, event.nickname(), event.message()), true);
+                    })
+
+                    // event - binary message
+                    .match(BinaryRequestEvent.class, (event) -> {
+                        if (log.isDebugEnabled()) log.debug("Forward BinaryMessage By {}, Total: {}", getSender().path(), actors.size());
+                        metrics.broadcast(event.timestamp(), actors.size());
+                        flush();
+
+                        // encoded at most once per wire format, the same read-only frames are shared by every member
+                        BinaryMessageEvent response = new BinaryMessageEvent(name, event.nickname(), event.message());
+                        record(response);
+                        fanout(response);
+                    })
+
+                    // entity - journal tail, the first answer wins over the timeout
+                    .match(RoomHistoryEvent.class, event -> {
+                        if (!seeding) return;
+                        seeding = false;
+                        getTimers().cancel(SEED);
+                        event.messages().forEach(this::seed);
+                        log.info("Seed Room: {}, Messages: {}", name, event.messages().size());
+                        subscribe();
+                        actors.forEach(this::replay);
+                    })
+
+                    .match(BatchFlushEvent.class, event -> flush())
+                    .build();
+        }
+
+        /**
+         * 日志中的消息按广播时的帧格式写入历史
+         */
+        void seed(IEvent message) {
+            if (message instanceof TextRequestEvent event) record(TextResponseEvent.line("[%s] %s: %s".formatted(name, event.nickname(), event.message())));
+            else if (message instanceof BinaryRequestEvent event) record(new BinaryMessageEvent(name, event.nickname(), event.message()));
+        }
+
+        /**
+         * 文本广播, 开启批处理时先进入批次; message 为 true 时写入消息历史
+         */
+        void broadcast(String recv, boolean message) {
+            if (Objects.isNull(batch)) {
+                TextResponseEvent response = TextResponseEvent.line(recv);
+                if (message) record(response);
+                fanout(response);
+                return;
+            }
+            if (message) record(TextResponseEvent.line(recv));
+            if (batch.isEmpty()) getTimers().startSingleTimer(FLUSH, new BatchFlushEvent(), window);
+            if (batch.add(recv)) flush();
+        }
+
+        /**
+         * 发送当前批次
+         */
+        void flush() {
+            if (Objects.isNull(batch) || batch.isEmpty()) return;
+            getTimers().cancel(FLUSH);
+            TextResponseEvent response = new TextResponseEvent(batch.drain());
+            fanout(response);
+        }
+
+        /**
+         * 投递给所有本地成员; 配置了扇出 worker 时按成员哈希分区, 每个分区固定由同一个 worker 投递,
+         * 成员收到的帧顺序不变, 大房间的投递循环不再占用房间 Actor
+         */
+        void fanout(IResponseEvent frame) {
+            if (workers.length == 0) {
+                actors.forEach(actor -> actor.tell(frame, ActorRef.noSender()));
+                return;
+            }
+            if (Objects.isNull(partitions)) partitions = partition();
+            for (int i = 0; i < workers.length; i++) {
+                if (partitions[i].length > 0) workers[i].tell(new FanoutEvent(partitions[i], frame), ActorRef.noSender());
+            }
+        }
+
+        /**
+         * 成员变化后重建分区, 分区数组创建后只读, 可以安全地交给 worker
+         */
+        ActorRef[][] partition() {
+            List<List<ActorRef>> lists = new ArrayList<>(workers.length);
+            for (int i = 0; i < workers.length; i++) lists.add(new ArrayList<>());
+            actors.forEach(actor -> lists.get(Math.floorMod(actor.hashCode(), workers.length)).add(actor));
+            ActorRef[][] result = new ActorRef[workers.length][];
+            for (int i = 0; i < workers.length; i++) result[i] = lists.get(i).toArray(ActorRef[]::new);
+            return result;
+        }
+
+        void record(IResponseEvent frame) {
+            if (!Objects.isNull(history)) history.add(frame);
+        }
+
+        /**
+         * 向新成员重放本节点保存的消息历史, 开启批处理时以批次帧重放;
+         * 房间在最后一个成员离开后保留 history.linger, 期间的消息同样记录
+         */
+        void replay(ActorRef member) {
+            if (Objects.isNull(history)) return;
+            history.replay(!Objects.isNull(batch), frame -> member.tell(frame, ActorRef.noSender()));
+        }
+    }
+
+
+    /**
+     * 节点级在线状态, 基于 Distributed Data
+     * <p>
+     * 房间按哈希分到固定数量的 ORMultiMap 中, 房间 -> 元素集合, 元素为 "节点/会话/昵称", 房间在线数量就是集合大小,
+     * 集合为空时房间随之从 ORMultiMap 中移除; 集群在线总数是按节点计数的 PNCounterMap.
+     * 两者都是 delta CRDT, gossip 只复制变化部分; 本节点的上下线在 flushInterval 内合并成每个分片一次写入.
+     * 查询只读本地副本, 不访问其他节点, 也不遍历会话; 节点被移除后由 leader 对每个分片一次写入清理它留下的元素和计数.
+     */
+    public static class ChatRoomPresence extends AbstractActorWithTimers {
+
+        static final String FLUSH = "flush";
+
+        /**
+         * 集群在线总数, 节点地址 -> 在线连接数量
+         */
+        static final PNCounterMapKey<String> ONLINE = PNCounterMapKey.create("presence-online");
+
+        /**
+         * 等待本地副本应答的查询
+         */
+        record Query(ActorRef replyTo, PresenceQueryEvent event) {
+        }
+
+        final ChatRoomClusterConfig.Presence config;
+        final Cluster cluster = Cluster.get(context().system());
+        final LoggingAdapter log = context().system().log();
+        final ActorRef replicator = DistributedData.get(context().system()).replicator();
+        final SelfUniqueAddress node = DistributedData.get(context().system()).selfUniqueAddress();
+        final String self = node.uniqueAddress().address().hostPort();
+        final List<ORMultiMapKey<String, String>> shards = new ArrayList<>();
+
+        /**
+         * 待写入的变化: 分片 -> 房间 -> 元素 -> 是否在线, 同一窗口内以最后一次为准
+         */
+        final Map<Integer, Map<String, Map<String, Boolean>>> pending = new HashMap<>();
+        long delta;
+        long online;
+
+        public ChatRoomPresence(ChatRoomClusterConfig.Presence config) {
+            this.config = config;
+            for (int i = 0; i < config.shards(); i++) shards.add(ORMultiMapKey.create("presence-rooms-" + i));
+        }
+
+        int shardOf(String room) {
+            return Math.floorMod(room.hashCode(), shards.size());
+        }
+
+        @Override
+        public void preStart() {
+            replicator.tell(new Replicator.Subscribe<>(ONLINE, getSelf()), ActorRef.noSender());
+            cluster.subscribe(getSelf(), ClusterEvent.MemberRemoved.class);
+            getTimers().startTimerWithFixedDelay(FLUSH, new PresenceFlushEvent(), config.flushInterval());
+        }
+
+        @Override
+        public void postStop() {
+            cluster.unsubscribe(getSelf());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(JoinRoomBroadcastEvent.class, event -> {
+                        change(event.room(), element(event.nickname()), true);
+                        delta++;
+                    })
+                    .match(LeaveRoomBroadcastEvent.class, event -> {
+                        change(event.room(), element(event.nickname()), false);
+                        delta--;
+                    })
+                    .match(PresenceFlushEvent.class, event -> flush())
+
+                    // queries are answered from the local replica
+                    .match(PresenceQueryEvent.class, event -> {
+                        if (Objects.isNull(event.room())) {
+                            getSender().tell(new PresenceEvent(null, 0, online, List.of()), getSelf());
+                            return;
+                        }
+                        replicator.tell(new Replicator.Get<>(shards.get(shardOf(event.room())), Replicator.readLocal(), Optional.<Object>of(new Query(getSender(), event))), getSelf());
+                    })
+                    .match(Replicator.GetSuccess.class, success -> {
+                        if (!(success.getRequest().orElse(null) instanceof Query query)) return;
+                        Option<scala.collection.immutable.Set<String>> elements = ((ORMultiMap<String, String>) success.dataValue()).get(query.event().room());
+                        reply(query, elements.isDefined() ? CollectionConverters.asJava(elements.get()) : Set.of());
+                    })
+                    .match(Replicator.NotFound.class, notFound -> {
+                        if (notFound.getRequest().orElse(null) instanceof Query query) reply(query, Set.of());
+                    })
+                    .match(Replicator.Changed.class, changed -> {
+                        long total = 0;
+                        for (BigInteger count : ((PNCounterMap<String>) changed.dataValue()).getEntries().values()) total += count.longValue();
+                        online = total;
+                    })
+                    .match(Replicator.UpdateResponse.class, response -> {
+                        if (!(response instanceof Replicator.UpdateSuccess)) log.warning("Presence update failed: {}", response);
+                    })
+
+                    // the removed node can no longer take its own members out, the leader does it once
+                    .match(ClusterEvent.MemberRemoved.class, removed -> {
+                        if (!cluster.selfAddress().equals(cluster.state().getLeader())) return;
+                        prune(removed.member().address().hostPort());
+                    })
+                    .build();
+        }
+
+        String element(String nickname) {
+            return "%s/%s/%s".formatted(self, getSender().path().name(), nickname);
+        }
+
+        void change(String room, String element, boolean joined) {
+            pending.computeIfAbsent(shardOf(room), key -> new HashMap<>())
+                    .computeIfAbsent(room, key -> new HashMap<>())
+                    .put(element, joined);
+        }
+
+        /**
+         * 写入本窗口的变化, 每个分片一次; removeBinding 在集合变空时移除房间
+         */
+        void flush() {
+            for (Map.Entry<Integer, Map<String, Map<String, Boolean>>> entry : pending.entrySet()) {
+                Map<String, Map<String, Boolean>> rooms = entry.getValue();
+                replicator.tell(new Replicator.Update<>(shards.get(entry.getKey()), ORMultiMap.<String, String>emptyWithValueDeltas(), Replicator.writeLocal(), map -> {
+                    ORMultiMap<String, String> value = map;
+                    for (Map.Entry<String, Map<String, Boolean>> room : rooms.entrySet()) {
+                        for (Map.Entry<String, Boolean> change : room.getValue().entrySet()) {
+                            value = change.getValue()
+                                    ? value.addBinding(node, room.getKey(), change.getKey())
+                                    : value.removeBinding(node, room.getKey(), change.getKey());
+                        }
+                    }
+                    return value;
+                }), getSelf());
+            }
+            pending.clear();
+
+            if (delta == 0) return;
+            long change = delta;
+            delta = 0;
+            replicator.tell(new Replicator.Update<>(ONLINE, PNCounterMap.<String>create(), Replicator.writeLocal(),
+                    map -> change > 0 ? map.increment(node, self, change) : map.decrement(node, self, -change)), getSelf());
+        }
+
+        void reply(Query query, Set<String> elements) {
+            List<String> members = List.of();
+            if (query.event().who()) {
+                TreeSet<String> nicknames = new TreeSet<>();
+                for (String element : elements) nicknames.add(element.split("/", 3)[2]);
+                members = nicknames.stream().limit(config.whoLimit()).toList();
+            }
+            query.replyTo().tell(new PresenceEvent(query.event().room(), elements.size(), online, members), getSelf());
+        }
+
+        /**
+         * 移除被移除节点的元素和计数, 每个分片一次写入, 和房间数量无关
+         */
+        void prune(String address) {
+            String prefix = address + "/";
+            log.info("Prune presence of {}", address);
+            for (ORMultiMapKey<String, String> shard : shards) {
+                replicator.tell(new Replicator.Update<>(shard, ORMultiMap.<String, String>emptyWithValueDeltas(), Replicator.writeLocal(), map -> {
+                    ORMultiMap<String, String> value = map;
+                    for (Map.Entry<String, Set<String>> room : map.getEntries().entrySet()) {
+                        for (String element : room.getValue()) {
+                            if (element.startsWith(prefix)) value = value.removeBinding(node, room.getKey(), element);
+                        }
+                    }
+                    return value;
+                }), getSelf());
+            }
+            replicator.tell(new Replicator.Update<>(ONLINE, PNCounterMap.<String>create(), Replicator.writeLocal(), map -> map.remove(node, address)), getSelf());
+        }
+    }
+
+
+    /**
+     * 节点级扇出 worker: 把同一个帧投递给一个成员分区
+     */
+    public static class ChatRoomFanoutWorker extends AbstractActor {
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(FanoutEvent.class, event -> {
+                        for (ActorRef member : event.members()) member.tell(event.frame(), ActorRef.noSender());
+                    })
+                    .build();
+        }
+    }
+
+}
@@ -0,0 +1,368 @@
+package io.fortress.quarkus.chatroom;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * 集群聊天室配置: chatroom.*
+ */
+@ConfigMapping(prefix = "chatroom")
+public interface ChatRoomClusterConfig {
+
+    /**
+     * 分片配置
+     */
+    Sharding sharding();
+
+    /**
+     * 会话配置
+     */
+    Session session();
+
+    /**
+     * 房间配置
+     */
+    Room room();
+
+    /**
+     * 心跳
+     */
+    Heartbeat heartbeat();
+
+    /**
+     * 节点下线时的会话排空
+     */
+    Drain drain();
+
+    /**
+     * 帧采样追踪
+     */
+    Trace trace();
+
+    /**
+     * Pekko Streams 帧处理管道
+     */
+    Ingest ingest();
+
+    /**
+     * 入站帧限流
+     */
+    Limit limit();
+
+    interface Sharding {
+
+        /**
+         * 分片数量, 集群内所有节点必须一致
+         */
+        @WithDefault("100")
+        int numberOfShards();
+    }
+
+    interface Session {
+
+        /**
+         * 单个会话同时在途的异步写入数量
+         */
+        @WithDefault("16")
+        int maxInFlight();
+
+        /**
+         * 发送队列
+         */
+        Outbound outbound();
+
+        /**
+         * 会话 Actor 的调度器, 通过 pekko.actor.deployment."/user/session-*" 生效:
+         * pekko.actor.default-dispatcher, session-blocking-dispatcher, session-virtual-dispatcher;
+         * 启动时校验调度器存在
+         */
+        @WithDefault("pekko.actor.default-dispatcher")
+        String dispatcher();
+    }
+
+    interface Outbound {
+
+        /**
+         * 单个会话排队等待写出的最大帧数量
+         */
+        @WithDefault("256")
+        int capacity();
+
+        /**
+         * 队列满时的处理策略: drop-oldest, drop-newest, coalesce, disconnect
+         */
+        @WithDefault("drop-oldest")
+        ChatRoomOutbound.OverflowPolicy policy();
+    }
+
+    interface Room {
+
+        /**
+         * 广播批处理
+         */
+        Batch batch();
+
+        /**
+         * 消息历史
+         */
+        History history();
+
+        /**
+         * 房间实体持久化
+         */
+        Persistence persistence();
+
+        /**
+         * 节点内扇出
+         */
+        Fanout fanout();
+
+        /**
+         * 在线状态
+         */
+        Presence presence();
+    }
+
+    interface Presence {
+
+        /**
+         * 是否向房间广播 join/leave 文本, 在线状态可以通过 /who 和 /count 查询
+         */
+        @WithDefault("false")
+        boolean announce();
+
+        /**
+         * 本节点的上下线变化合并后写入 Distributed Data 的间隔
+         */
+        @WithDefault("500ms")
+        Duration flushInterval();
+
+        /**
+         * 房间在线集合分布到的 Distributed Data 键数量, 固定不变, 房间按哈希分配
+         */
+        @WithDefault("32")
+        int shards();
+
+        /**
+         * /who 最多返回的昵称数量
+         */
+        @WithDefault("100")
+        int whoLimit();
+    }
+
+    interface Fanout {
+
+        /**
+         * 节点级扇出 worker 数量, 大房间的成员按哈希分区后并行投递, 0 表示由房间 Actor 直接投递
+         */
+        @WithDefault("0")
+        int workers();
+    }
+
+    interface Persistence {
+
+        /**
+         * 开启后房间实体以事件溯源方式持久化成员变化和消息, history.size 为 0 时不记录消息
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * 每多少个事件保存一次快照, 快照之前的事件随后删除
+         */
+        @WithDefault("1000")
+        int snapshotEvery();
+
+        /**
+         * 本节点房间启动时等待房间实体返回历史消息的最长时间, 超时后以空历史开始
+         */
+        @WithDefault("5s")
+        Duration seedTimeout();
+    }
+
+    interface History {
+
+        /**
+         * 每个房间保存的最近消息数量, 新成员加入时重放, 0 表示关闭
+         */
+        @WithDefault("50")
+        int size();
+
+        /**
+         * 最后一个本地成员离开后房间和消息历史在本节点的保留时间, 期间重新加入的成员仍然可以收到重放, 0 表示立即回收
+         */
+        @WithDefault("2m")
+        Duration linger();
+    }
+
+    interface Batch {
+
+        /**
+         * 开启后文本消息按窗口合并为 JSON 字符串数组帧
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * 合并窗口
+         */
+        @WithDefault("20ms")
+        Duration window();
+
+        /**
+         * 单个批次的最大消息数量, 达到后立即发送
+         */
+        @WithDefault("32")
+        int maxMessages();
+    }
+
+    interface Trace {
+
+        /**
+         * 平均每 N 帧记录 1 帧, 0 表示关闭
+         */
+        @WithDefault("0")
+        int sampleRate();
+
+        /**
+         * 环形缓冲区保存的帧数量
+         */
+        @WithDefault("1024")
+        int capacity();
+
+        /**
+         * 帧内容预览长度
+         */
+        @WithDefault("64")
+        int preview();
+    }
+
+    interface Heartbeat {
+
+        /**
+         * 每个连接的心跳间隔
+         */
+        @WithDefault("30s")
+        Duration interval();
+
+        /**
+         * 超过该时间没有收到 pong 则关闭连接
+         */
+        @WithDefault("90s")
+        Duration idleTimeout();
+
+        /**
+         * 时间轮槽位数量, 心跳分散到 interval / slots 的刻度上
+         */
+        @WithDefault("32")
+        int slots();
+    }
+
+    interface Drain {
+
+        /**
+         * 每批并行关闭的连接数量
+         */
+        @WithDefault("256")
+        int batchSize();
+
+        /**
+         * 排空的最长时间, 超时后直接退出
+         */
+        @WithDefault("10s")
+        Duration timeout();
+
+        /**
+         * 发送重连提示后等待出站队列写完的最长时间
+         */
+        @WithDefault("5s")
+        Duration flushTimeout();
+
+        /**
+         * 重连提示中的最短等待时间
+         */
+        @WithDefault("1s")
+        Duration reconnectMin();
+
+        /**
+         * 重连提示中的最长等待时间, 每个会话在 [reconnectMin, reconnectMax] 内随机
+         */
+        @WithDefault("30s")
+        Duration reconnectMax();
+    }
+
+    interface Ingest {
+
+        /**
+         * 是否启用, 关闭时帧直接交给会话 Actor
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * 每个连接的入站缓冲, 满后背压到 socket 读取
+         */
+        @WithDefault("64")
+        int bufferSize();
+
+        /**
+         * MergeHub 每个生产者的缓冲
+         */
+        @WithDefault("16")
+        int hubBuffer();
+
+        /**
+         * 单帧最大长度, 超过的帧被丢弃
+         */
+        @WithDefault("65536")
+        int maxFrameSize();
+
+        /**
+         * 节点每秒处理的最大帧数, 0 表示不限
+         */
+        @WithDefault("0")
+        int rate();
+    }
+
+    interface Limit {
+
+        /**
+         * 每个连接的限制
+         */
+        Bucket session();
+
+        /**
+         * 每个房间在本节点的限制
+         */
+        Bucket room();
+
+        /**
+         * 超出限制时的处理: drop | delay | close
+         */
+        @WithDefault("drop")
+        ChatRoomLimiter.Action action();
+
+        /**
+         * delay 时的最长延迟, 超过后丢弃
+         */
+        @WithDefault("1s")
+        Duration maxDelay();
+    }
+
+    interface Bucket {
+
+        /**
+         * 每秒允许的帧数, 0 表示不限
+         */
+        @WithDefault("0")
+        int rate();
+
+        /**
+         * 允许的突发帧数, 0 表示等于 rate
+         */
+        @WithDefault("0")
+        int burst();
+    }
+}
@@ -1,64 +1,134 @@
-package io.fortress.quarkus.chatroom;
-
-import io.fortress.quarkus.chatroom.event.*;
-import io.quarkus.websockets.next.CloseReason;
-import io.quarkus.websockets.next.WebSocketConnection;
-import io.vertx.core.buffer.Buffer;
-import jakarta.inject.Inject;
-import org.apache.pekko.actor.AbstractActor;
-import org.apache.pekko.actor.ActorRef;
-import org.apache.pekko.actor.Cancellable;
-import org.apache.pekko.actor.Scheduler;
-import org.apache.pekko.cluster.Cluster;
-import org.apache.pekko.event.LoggingAdapter;
-
-import java.time.Duration;
-import java.util.Objects;
-
-public class ChatRoomClusterSession extends AbstractActor {
-
-    @Inject
-    ChatRoomClusterBootstrap.Bootstrap bootstrap;
-
-    final LoggingAdapter log = context().system().log();
-    final WebSocketConnection connection;
-    final Scheduler scheduler = context().system().scheduler();
-    final Cluster cluster = Cluster.get(context().system());
-    final Cancellable heartbeat;
-
-    public ChatRoomClusterSession(WebSocketConnection connection) {
-        this.connection = connection;
-        this.heartbeat = scheduler.scheduleAtFixedRate(
-                Duration.ofSeconds(30),
-                Duration.ofSeconds(30),
-                getSelf(),
-                new HeartbeatEvent(),
-                getContext().getDispatcher(),
-                ActorRef.noSender()
-        );
-        cluster.registerOnMemberRemoved(() -> connection.closeAndAwait(CloseReason.INTERNAL_SERVER_ERROR));
-    }
-
-    @Override
-    public void preStart() {
-        bootstrap.getAddress().tell(new JoinRoomBroadcastEvent(connection.pathParam("nickname").trim()), getSelf());
-    }
-
-    @Override
-    public void postStop() {
-        if (!Objects.isNull(heartbeat)) heartbeat.cancel();
-        bootstrap.getAddress().tell(new LeaveRoomBroadcastEvent(connection.pathParam("nickname").trim()), getSelf());
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(HeartbeatEvent.class, connection::isOpen, heartbeat -> connection.sendPingAndAwait(Buffer.buffer("Heartbeat")))
-                .match(DisconnectedEvent.class, (event) -> log.info("Disconnected Session: {}", event))
-                .match(TextRequestEvent.class, event -> bootstrap.getAddress().tell(new TextRequestBroadcastEvent(event.nickname(), event.message()), getSelf()))
-                .match(BinaryRequestEvent.class, event -> bootstrap.getAddress().tell(new BinaryRequestBroadcastEvent(event.nickname(), event.message()), getSelf()))
-                .match(TextResponseEvent.class, connection::isOpen, event -> connection.sendTextAndAwait(event.message()))
-                .match(BinaryResponseEvent.class, connection::isOpen, event -> connection.sendBinaryAndAwait(event.message()))
-                .build();
-    }
-}
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import io.quarkus.websockets.next.WebSocketConnection;
+import jakarta.inject.Inject;
+import org.apache.pekko.Done;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.cluster.pubsub.DistributedPubSub;
+import org.apache.pekko.cluster.pubsub.DistributedPubSubMediator;
+import org.apache.pekko.event.LoggingAdapter;
+import org.apache.pekko.pattern.Patterns;
+
+import java.util.Objects;
+
+public class ChatRoomClusterSession extends AbstractActor {
+
+    @Inject
+    ChatRoomClusterBootstrap.Bootstrap bootstrap;
+
+    @Inject
+    ChatRoomClusterConfig config;
+
+    @Inject
+    ChatRoomMetrics metrics;
+
+    @Inject
+    ChatRoomIngest ingest;
+
+    final LoggingAdapter log = context().system().log();
+    final WebSocketConnection connection;
+
+    /**
+     * 是否协商了紧凑二进制帧
+     */
+    final boolean compact;
+    final String room;
+    final String nickname;
+    final DistributedPubSub distributed = DistributedPubSub.get(context().system());
+    ChatRoomOutbound outbound;
+
+    /**
+     * 管道模式下的出站管道
+     */
+    ChatRoomIngest.Outbound pipeline;
+
+    /**
+     * 节点排空时等待出站队列写完的一方
+     */
+    ActorRef drainer;
+    String topic;
+
+    public ChatRoomClusterSession(WebSocketConnection connection) {
+        this.connection = connection;
+        this.compact = ChatRoomProtocol.compact(connection);
+        this.room = connection.pathParam("room").trim();
+        this.nickname = connection.pathParam("nickname").trim();
+    }
+
+    @Override
+    public void preStart() {
+        // the room entity only tracks membership, messages are published straight to the room topic
+        topic = ChatRoomClusterBootstrap.topicOf(context().system(), room);
+        if (config.ingest().enabled()) pipeline = ingest.outbound(connection);
+        outbound = new ChatRoomOutbound(
+                connection,
+                getSelf(),
+                getContext().getDispatcher(),
+                config.session().maxInFlight(),
+                config.session().outbound().capacity(),
+                config.session().outbound().policy(),
+                metrics
+        );
+        bootstrap.getAddress().tell(new JoinRoomBroadcastEvent(room, nickname), getSelf());
+    }
+
+    @Override
+    public void postStop() {
+        if (!Objects.isNull(outbound)) outbound.clear();
+        if (!Objects.isNull(pipeline)) pipeline.queue().complete();
+        bootstrap.getAddress().tell(new LeaveRoomBroadcastEvent(room, nickname), getSelf());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(DisconnectedEvent.class, (event) -> log.info("Disconnected Session: {}, Outbound High Water Mark: {}", event, outbound.highWaterMark()))
+                .match(TextRequestEvent.class, this::publish)
+                .match(BinaryRequestEvent.class, this::publish)
+                .match(TextResponseEvent.class, connection::isOpen, this::send)
+                .match(BinaryResponseEvent.class, connection::isOpen, this::send)
+                .match(BinaryMessageEvent.class, connection::isOpen, event -> send(compact ? event.compact() : event.legacy()))
+                .match(PresenceQueryEvent.class, event -> bootstrap.getPresence().tell(event, getSelf()))
+                .match(PresenceEvent.class, connection::isOpen, event -> send(new TextResponseEvent(PresenceRoutes.json(event))))
+                .match(SendCompletedEvent.class, event -> {
+                    if (!Objects.isNull(event.failure())) log.warning("Send failed: {}", event.failure().getMessage());
+                    outbound.completed(event);
+                    drained();
+                })
+
+                // node leaving: the reconnect hint goes out behind the frames already queued
+                .match(DrainEvent.class, event -> {
+                    if (connection.isOpen()) send(new TextResponseEvent(event.hint()));
+                    drainer = getSender();
+                    if (!Objects.isNull(pipeline)) {
+                        // the sink completes once the queued frames are written, not just taken off the queue
+                        pipeline.queue().complete();
+                        Patterns.pipe(pipeline.done(), getContext().getDispatcher()).to(drainer);
+                        drainer = null;
+                        return;
+                    }
+                    drained();
+                })
+                .build();
+    }
+
+    /**
+     * 出站队列写完后应答排空
+     */
+    void drained() {
+        if (Objects.isNull(drainer) || outbound.inFlight() > 0 || outbound.pending() > 0) return;
+        drainer.tell(Done.getInstance(), getSelf());
+        drainer = null;
+    }
+
+    void send(IResponseEvent frame) {
+        if (Objects.isNull(pipeline)) outbound.send(frame);
+        else pipeline.queue().offer(frame);
+    }
+
+    void publish(IEvent event) {
+        distributed.mediator().tell(new DistributedPubSubMediator.Publish(topic, event), getSelf());
+    }
+}
@@ -1,99 +1,210 @@
-package io.fortress.quarkus.chatroom;
-
-import io.fortress.quarkus.chatroom.event.BinaryRequestEvent;
-import io.fortress.quarkus.chatroom.event.DisconnectedEvent;
-import io.fortress.quarkus.chatroom.event.ExceptionEvent;
-import io.fortress.quarkus.chatroom.event.TextRequestEvent;
-import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
-import io.quarkus.websockets.next.*;
-import jakarta.inject.Inject;
-import org.apache.pekko.actor.ActorRef;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-
-@WebSocket(path = "/chatroom/{nickname}")
-public class ChatRoomClusterWebSocket {
-
-    /**
-     * 日志对象
-     */
-    final static Logger logger = LoggerFactory.getLogger(ChatRoomClusterWebSocket.class);
-
-    /**
-     * 在线会话
-     */
-    final static Map<String, ActorRef> sessions = new ConcurrentHashMap<>();
-
-
-    @Inject
-    ActorContainer actors;
-
-
-    /**
-     * 会话连接
-     *
-     * @param session WebSocketConnection
-     */
-    @OnOpen
-    public void connected(WebSocketConnection session) {
-        logger.info("Connected to websocket: {}", session.id());
-        ActorRef actor = actors.injectOf(session.id(), ChatRoomClusterSession.class, () -> new ChatRoomClusterSession(session));
-        sessions.put(session.id(), actor);
-    }
-
-
-    /**
-     * 会话断开
-     *
-     * @param session WebSocketConnection
-     * @param reason  CloseReason
-     */
-    @OnClose
-    public void disconnect(WebSocketConnection session, CloseReason reason) {
-        logger.info("Disconnected from websocket: {}, Reason: {}", session.id(), reason);
-        ActorRef actor = sessions.remove(session.id());
-        if (!Objects.isNull(actor)) actor.tell(new DisconnectedEvent(reason), ActorRef.noSender());
-
-        // remote
-        actors.remove(session.id());
-    }
-
-
-    /**
-     * 会话异常
-     */
-    @OnError
-    public void error(WebSocketConnection session, Exception e) {
-        logger.error("Error from websocket: {}", session.id(), e);
-        ActorRef actor = sessions.get(session.id());
-        if (!Objects.isNull(actor)) actor.tell(new ExceptionEvent(e), ActorRef.noSender());
-    }
-
-    /**
-     * 文本消息传递
-     */
-    @OnTextMessage
-    public void textMessage(WebSocketConnection session, String message) {
-        logger.info("TextMessage from websocket: {}", session.id() + ": " + message);
-        ActorRef actor = sessions.get(session.id());
-        String nickname = session.pathParam("nickname").trim();
-        if (!Objects.isNull(actor)) actor.tell(new TextRequestEvent(nickname, message), ActorRef.noSender());
-    }
-
-    /**
-     * 二进制消息传递
-     */
-    @OnBinaryMessage
-    public void binaryMessage(WebSocketConnection session, byte[] message) {
-        logger.info("BinaryMessage from websocket: {}", session.id() + ": " + Arrays.toString(message));
-        ActorRef actor = sessions.get(session.id());
-        String nickname = session.pathParam("nickname").trim();
-        if (!Objects.isNull(actor)) actor.tell(new BinaryRequestEvent(nickname, message), ActorRef.noSender());
-    }
-
-}
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.BinaryRequestEvent;
+import io.fortress.quarkus.chatroom.event.DisconnectedEvent;
+import io.fortress.quarkus.chatroom.event.ExceptionEvent;
+import io.fortress.quarkus.chatroom.event.IEvent;
+import io.fortress.quarkus.chatroom.event.PresenceQueryEvent;
+import io.fortress.quarkus.chatroom.event.TextRequestEvent;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.websockets.next.*;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.buffer.Buffer;
+import jakarta.inject.Inject;
+import org.apache.pekko.actor.ActorRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+
+@WebSocket(path = "/chatroom/{room}/{nickname}")
+public class ChatRoomClusterWebSocket {
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(ChatRoomClusterWebSocket.class);
+
+    /**
+     * 在线会话
+     */
+    @Inject
+    SessionRegistry sessions;
+
+
+    @Inject
+    ActorContainer actors;
+
+
+    /**
+     * 帧采样追踪
+     */
+    @Inject
+    FrameTracer tracer;
+
+
+    /**
+     * 心跳时间轮
+     */
+    @Inject
+    HeartbeatWheel heartbeats;
+
+
+    /**
+     * 指标
+     */
+    @Inject
+    ChatRoomMetrics metrics;
+
+
+    /**
+     * 帧处理管道
+     */
+    @Inject
+    ChatRoomIngest ingest;
+
+
+    @Inject
+    ChatRoomClusterConfig config;
+
+
+    /**
+     * 入站限流
+     */
+    @Inject
+    ChatRoomLimiter limiter;
+
+
+    static final CloseReason RATE_LIMITED = new CloseReason(1008, "Rate limit exceeded");
+
+
+    /**
+     * 会话 Actor 名称, 前缀用于匹配 pekko.actor.deployment."/user/session-*"
+     */
+    static String actorName(WebSocketConnection session) {
+        return "session-" + session.id();
+    }
+
+
+    /**
+     * 会话连接
+     *
+     * @param session WebSocketConnection
+     */
+    @OnOpen
+    public void connected(WebSocketConnection session) {
+        logger.info("Connected to websocket: {}", session.id());
+        ActorRef actor = actors.injectOf(actorName(session), ChatRoomClusterSession.class, () -> new ChatRoomClusterSession(session));
+        SessionRegistry.Entry entry = sessions.register(session.id(), session.pathParam("nickname").trim(), session.pathParam("room").trim(), actor);
+        limiter.open(session.id(), entry.room());
+        heartbeats.register(session);
+        if (config.ingest().enabled()) ingest.open(session.id());
+    }
+
+
+    /**
+     * 心跳应答
+     */
+    @OnPongMessage
+    public void pong(WebSocketConnection session, Buffer data) {
+        heartbeats.pong(session.id());
+    }
+
+
+    /**
+     * 会话断开
+     *
+     * @param session WebSocketConnection
+     * @param reason  CloseReason
+     */
+    @OnClose
+    public void disconnect(WebSocketConnection session, CloseReason reason) {
+        logger.info("Disconnected from websocket: {}, Reason: {}", session.id(), reason);
+        SessionRegistry.Entry entry = sessions.unregister(session.id());
+        if (!Objects.isNull(entry)) {
+            entry.actor().tell(new DisconnectedEvent(reason), ActorRef.noSender());
+            limiter.close(session.id(), entry.room());
+        }
+
+        heartbeats.unregister(session.id());
+        tracer.forget(session.id());
+        if (config.ingest().enabled()) ingest.close(session.id());
+
+        // remote
+        actors.remove(actorName(session));
+    }
+
+
+    /**
+     * 会话异常
+     */
+    @OnError
+    public void error(WebSocketConnection session, Exception e) {
+        logger.error("Error from websocket: {}", session.id(), e);
+        SessionRegistry.Entry entry = sessions.get(session.id());
+        if (!Objects.isNull(entry)) entry.actor().tell(new ExceptionEvent(e), ActorRef.noSender());
+    }
+
+    /**
+     * 文本消息传递, 管道模式下返回的 Uni 在管道接受该帧后完成
+     */
+    @OnTextMessage
+    public Uni<Void> textMessage(WebSocketConnection session, String message) {
+        metrics.textReceived(message);
+        if (tracer.sampled(session.id())) tracer.text(session.id(), "in", message);
+        SessionRegistry.Entry entry = sessions.get(session.id());
+        if (Objects.isNull(entry)) return ChatRoomIngest.DONE;
+        long wait = limiter.acquire(session.id(), entry.room());
+        if (wait < 0) return throttled(session, wait);
+        if (ChatRoomProtocol.WHO.equals(message) || ChatRoomProtocol.COUNT.equals(message)) {
+            entry.actor().tell(new PresenceQueryEvent(entry.room(), ChatRoomProtocol.WHO.equals(message)), ActorRef.noSender());
+            return ChatRoomIngest.DONE;
+        }
+        return dispatch(session, entry, new TextRequestEvent(entry.nickname(), message, System.currentTimeMillis()), wait);
+    }
+
+    /**
+     * 二进制消息传递
+     */
+    @OnBinaryMessage
+    public Uni<Void> binaryMessage(WebSocketConnection session, byte[] message) {
+        metrics.binaryReceived(message);
+        if (tracer.sampled(session.id())) tracer.binary(session.id(), "in", message);
+        SessionRegistry.Entry entry = sessions.get(session.id());
+        if (Objects.isNull(entry)) return ChatRoomIngest.DONE;
+        long wait = limiter.acquire(session.id(), entry.room());
+        if (wait < 0) return throttled(session, wait);
+        return dispatch(session, entry, new BinaryRequestEvent(entry.nickname(), message, System.currentTimeMillis()), wait);
+    }
+
+    /**
+     * 超出限流
+     */
+    Uni<Void> throttled(WebSocketConnection session, long wait) {
+        boolean room = wait == ChatRoomLimiter.ROOM;
+        metrics.throttled(room);
+        if (!room && limiter.action() == ChatRoomLimiter.Action.CLOSE) return session.close(RATE_LIMITED);
+        return ChatRoomIngest.DONE;
+    }
+
+    /**
+     * 交给会话 Actor 或帧处理管道, wait 为限流要求的延迟
+     */
+    Uni<Void> dispatch(WebSocketConnection session, SessionRegistry.Entry entry, IEvent event, long wait) {
+        if (wait == 0) return forward(session, entry, event);
+
+        // the frame completes late instead of blocking the event loop
+        metrics.delayed();
+        return Uni.createFrom().voidItem()
+                .onItem().delayIt().by(Duration.ofNanos(wait))
+                .chain(() -> forward(session, entry, event));
+    }
+
+    Uni<Void> forward(WebSocketConnection session, SessionRegistry.Entry entry, IEvent event) {
+        if (config.ingest().enabled()) return ingest.offer(session.id(), entry.room(), event);
+        entry.actor().tell(event, ActorRef.noSender());
+        return ChatRoomIngest.DONE;
+    }
+
+}
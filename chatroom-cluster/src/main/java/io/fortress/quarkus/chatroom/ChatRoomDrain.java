@@ -0,0 +1,139 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.DrainEvent;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.websockets.next.CloseReason;
+import io.quarkus.websockets.next.HttpUpgradeCheck;
+import io.quarkus.websockets.next.OpenConnections;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.apache.pekko.actor.CoordinatedShutdown;
+import org.apache.pekko.pattern.Patterns;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 节点级会话排空
+ * <p>
+ * 节点离开集群时按顺序执行, 挂在 pekko CoordinatedShutdown 的阶段上, 早于 cluster-leave:
+ * <ol>
+ *     <li>service-unbind: 停止接受新连接, 握手直接返回 503</li>
+ *     <li>service-requests-done: 向每个会话发送带随机退避的重连提示帧, 等待出站队列写完, 不超过 flushTimeout</li>
+ *     <li>service-requests-done: 连接按 batchSize 分批并行关闭, 上一批完成后再开始下一批, 整体不超过 timeout</li>
+ * </ol>
+ * 客户端按提示中的等待时间分散重连到其他节点, 不会在同一时刻涌入.
+ */
+@ApplicationScoped
+public class ChatRoomDrain implements HttpUpgradeCheck {
+
+    /**
+     * 节点下线的关闭原因, 客户端可以重连到其他节点
+     */
+    static final CloseReason GOING_AWAY = new CloseReason(1001, "Node leaving cluster");
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(ChatRoomDrain.class);
+
+    @Inject
+    OpenConnections connections;
+
+    @Inject
+    SessionRegistry sessions;
+
+    @Inject
+    ActorContainer actors;
+
+    @Inject
+    ChatRoomClusterConfig config;
+
+    volatile boolean accepting = true;
+
+    @Override
+    public Uni<CheckResult> perform(HttpUpgradeContext context) {
+        return accepting ? CheckResult.permitUpgrade() : CheckResult.rejectUpgrade(503);
+    }
+
+    /**
+     * 停止接受新连接
+     */
+    public void stopAccepting() {
+        accepting = false;
+        logger.info("Stopped accepting websocket upgrades");
+    }
+
+    /**
+     * 进程退出时先走完 CoordinatedShutdown, 此时 http 服务器还在, 在线连接可以正常排空
+     */
+    void onShutdown(@Observes ShutdownEvent event) {
+        ChatRoomClusterConfig.Drain drain = config.drain();
+        Uni.createFrom().completionStage(() -> CoordinatedShutdown.get(actors.system()).runAll(CoordinatedShutdown.jvmExitReason()))
+                .ifNoItem().after(drain.flushTimeout().plus(drain.timeout()).plusSeconds(5)).recoverWithNull()
+                .onFailure().recoverWithNull()
+                .await().indefinitely();
+    }
+
+    /**
+     * 发送重连提示并等待出站队列写完, 然后分批关闭所有在线连接
+     */
+    public Uni<Void> drain() {
+        accepting = false;
+        return flush().chain(this::close);
+    }
+
+    Uni<Void> flush() {
+        ChatRoomClusterConfig.Drain drain = config.drain();
+        long min = drain.reconnectMin().toMillis();
+        long max = Math.max(min, drain.reconnectMax().toMillis());
+        Duration timeout = drain.flushTimeout();
+
+        List<Uni<Void>> flushes = new ArrayList<>(sessions.online());
+        for (SessionRegistry.Entry entry : sessions.entries()) {
+            // jittered per session, so the clients of this node come back spread over [min, max]
+            String hint = ChatRoomProtocol.reconnect(ThreadLocalRandom.current().nextLong(min, max + 1));
+            flushes.add(Uni.createFrom().completionStage(() -> Patterns.ask(entry.actor(), new DrainEvent(hint), timeout))
+                    .onFailure().recoverWithNull()
+                    .replaceWithVoid());
+        }
+        logger.info("Sent reconnect hints to {} sessions, waiting up to {} for outbound queues", flushes.size(), timeout);
+        if (flushes.isEmpty()) return Uni.createFrom().voidItem();
+        return Uni.join().all(flushes).andCollectFailures()
+                .replaceWithVoid()
+                .ifNoItem().after(timeout).recoverWithNull()
+                .onFailure().recoverWithNull();
+    }
+
+    Uni<Void> close() {
+        List<WebSocketConnection> open = connections.listAll();
+        int batchSize = config.drain().batchSize();
+        logger.info("Draining {} sessions in batches of {}", open.size(), batchSize);
+
+        Uni<Void> chain = Uni.createFrom().voidItem();
+        for (int i = 0; i < open.size(); i += batchSize) {
+            List<WebSocketConnection> batch = open.subList(i, Math.min(open.size(), i + batchSize));
+            chain = chain.chain(() -> close(batch));
+        }
+        return chain
+                .ifNoItem().after(config.drain().timeout()).recoverWithNull()
+                .invoke(() -> logger.info("Drained, remaining sessions: {}", connections.listAll().size()));
+    }
+
+    static Uni<Void> close(List<WebSocketConnection> batch) {
+        List<Uni<Void>> closes = new ArrayList<>(batch.size());
+        for (WebSocketConnection connection : batch) {
+            if (connection.isOpen()) closes.add(connection.close(GOING_AWAY).onFailure().recoverWithNull());
+        }
+        if (closes.isEmpty()) return Uni.createFrom().voidItem();
+        return Uni.join().all(closes).andFailFast().replaceWithVoid();
+    }
+}
@@ -0,0 +1,202 @@
+package io.fortress.quarkus.chatroom;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import io.fortress.quarkus.chatroom.event.*;
+import org.apache.pekko.serialization.SerializerWithStringManifest;
+
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 集群事件序列化
+ * <p>
+ * 跨节点的房间事件按 event.proto 编码, 替代默认的 Java 序列化:
+ * <pre>
+ * pekko.actor.serializers.room = "io.fortress.quarkus.chatroom.ChatRoomEventSerializer"
+ * pekko.actor.serialization-bindings {
+ *   "io.fortress.quarkus.chatroom.event.IRoomEvent" = room
+ *   "io.fortress.quarkus.chatroom.event.JoinRoomEvent" = room
+ *   ...
+ * }
+ * </pre>
+ */
+public class ChatRoomEventSerializer extends SerializerWithStringManifest {
+
+    static final String JOIN_ROOM_BROADCAST = "JB";
+    static final String LEAVE_ROOM_BROADCAST = "LB";
+    static final String JOIN_ROOM = "J";
+    static final String LEAVE_ROOM = "L";
+    static final String TEXT_REQUEST = "T";
+    static final String BINARY_REQUEST = "B";
+    static final String ROOM_MEMBER = "M";
+    static final String ROOM_SNAPSHOT = "S";
+    static final String ROOM_HISTORY_QUERY = "HQ";
+    static final String ROOM_HISTORY = "H";
+
+    /**
+     * 已移除的 TextRequestBroadcast / BinaryRequestBroadcast, 不再复用
+     */
+    static final String RETIRED_TEXT_REQUEST_BROADCAST = "TB";
+    static final String RETIRED_BINARY_REQUEST_BROADCAST = "BB";
+
+    @Override
+    public int identifier() {
+        return 9527;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        if (o instanceof JoinRoomBroadcastEvent) return JOIN_ROOM_BROADCAST;
+        if (o instanceof LeaveRoomBroadcastEvent) return LEAVE_ROOM_BROADCAST;
+        if (o instanceof JoinRoomEvent) return JOIN_ROOM;
+        if (o instanceof LeaveRoomEvent) return LEAVE_ROOM;
+        if (o instanceof TextRequestEvent) return TEXT_REQUEST;
+        if (o instanceof BinaryRequestEvent) return BINARY_REQUEST;
+        if (o instanceof RoomMemberEvent) return ROOM_MEMBER;
+        if (o instanceof RoomSnapshot) return ROOM_SNAPSHOT;
+        if (o instanceof RoomHistoryQueryEvent) return ROOM_HISTORY_QUERY;
+        if (o instanceof RoomHistoryEvent) return ROOM_HISTORY;
+        throw new IllegalArgumentException("Unsupported event: " + o.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        // payload bytes are never mutated after the event is created, so they are wrapped without a copy
+        if (o instanceof JoinRoomBroadcastEvent event) return Event.JoinRoomBroadcast
+                .newBuilder()
+                .setRoom(event.room())
+                .setNickname(event.nickname())
+                .build()
+                .toByteArray();
+        if (o instanceof LeaveRoomBroadcastEvent event) return Event.LeaveRoomBroadcast
+                .newBuilder()
+                .setRoom(event.room())
+                .setNickname(event.nickname())
+                .build()
+                .toByteArray();
+        if (o instanceof JoinRoomEvent event) return Event.JoinRoom
+                .newBuilder()
+                .setNickname(event.nickname())
+                .build()
+                .toByteArray();
+        if (o instanceof LeaveRoomEvent event) return Event.LeaveRoom
+                .newBuilder()
+                .setNickname(event.nickname())
+                .build()
+                .toByteArray();
+        if (o instanceof TextRequestEvent event) return text(event).toByteArray();
+        if (o instanceof BinaryRequestEvent event) return binary(event).toByteArray();
+        if (o instanceof RoomMemberEvent event) return Event.RoomMember
+                .newBuilder()
+                .setRoom(event.room())
+                .setNode(event.node())
+                .setNickname(event.nickname())
+                .setCount(event.count())
+                .build()
+                .toByteArray();
+        if (o instanceof RoomSnapshot snapshot) {
+            Event.RoomSnapshot.Builder builder = Event.RoomSnapshot
+                    .newBuilder()
+                    .setRoom(snapshot.room())
+                    .putAllMembers(snapshot.members());
+            for (IEvent message : snapshot.messages()) builder.addMessages(message(message));
+            return builder.build().toByteArray();
+        }
+        if (o instanceof RoomHistoryQueryEvent event) return Event.RoomHistoryQuery
+                .newBuilder()
+                .setRoom(event.room())
+                .build()
+                .toByteArray();
+        if (o instanceof RoomHistoryEvent event) {
+            Event.RoomHistory.Builder builder = Event.RoomHistory
+                    .newBuilder()
+                    .setRoom(event.room());
+            for (IEvent message : event.messages()) builder.addMessages(message(message));
+            return builder.build().toByteArray();
+        }
+        throw new IllegalArgumentException("Unsupported event: " + o.getClass().getName());
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        try {
+            return switch (manifest) {
+                case JOIN_ROOM_BROADCAST -> {
+                    var msg = Event.JoinRoomBroadcast.parseFrom(bytes);
+                    yield new JoinRoomBroadcastEvent(msg.getRoom(), msg.getNickname());
+                }
+                case LEAVE_ROOM_BROADCAST -> {
+                    var msg = Event.LeaveRoomBroadcast.parseFrom(bytes);
+                    yield new LeaveRoomBroadcastEvent(msg.getRoom(), msg.getNickname());
+                }
+                case JOIN_ROOM -> new JoinRoomEvent(Event.JoinRoom.parseFrom(bytes).getNickname());
+                case LEAVE_ROOM -> new LeaveRoomEvent(Event.LeaveRoom.parseFrom(bytes).getNickname());
+                case TEXT_REQUEST -> text(Event.TextRequest.parseFrom(bytes));
+                case BINARY_REQUEST -> binary(Event.BinaryRequest.parseFrom(bytes));
+                case ROOM_MEMBER -> {
+                    var msg = Event.RoomMember.parseFrom(bytes);
+                    yield new RoomMemberEvent(msg.getRoom(), msg.getNode(), msg.getNickname(), msg.getCount());
+                }
+                case ROOM_SNAPSHOT -> {
+                    var msg = Event.RoomSnapshot.parseFrom(bytes);
+                    yield new RoomSnapshot(msg.getRoom(), msg.getMembersMap(), messages(msg.getMessagesList()));
+                }
+                case ROOM_HISTORY_QUERY -> new RoomHistoryQueryEvent(Event.RoomHistoryQuery.parseFrom(bytes).getRoom());
+                case ROOM_HISTORY -> {
+                    var msg = Event.RoomHistory.parseFrom(bytes);
+                    yield new RoomHistoryEvent(msg.getRoom(), messages(msg.getMessagesList()));
+                }
+                case RETIRED_TEXT_REQUEST_BROADCAST, RETIRED_BINARY_REQUEST_BROADCAST -> throw new NotSerializableException("Retired manifest: " + manifest);
+                default -> throw new NotSerializableException("Unknown manifest: " + manifest);
+            };
+        } catch (InvalidProtocolBufferException e) {
+            throw new NotSerializableException(e.getMessage());
+        }
+    }
+
+    static Event.TextRequest text(TextRequestEvent event) {
+        return Event.TextRequest
+                .newBuilder()
+                .setNickname(event.nickname())
+                .setMessage(event.message())
+                .setTimestamp(event.timestamp())
+                .build();
+    }
+
+    static Event.BinaryRequest binary(BinaryRequestEvent event) {
+        return Event.BinaryRequest
+                .newBuilder()
+                .setNickname(event.nickname())
+                .setMessage(UnsafeByteOperations.unsafeWrap(event.message()))
+                .setTimestamp(event.timestamp())
+                .build();
+    }
+
+    static TextRequestEvent text(Event.TextRequest msg) {
+        return new TextRequestEvent(msg.getNickname(), msg.getMessage(), msg.getTimestamp());
+    }
+
+    static BinaryRequestEvent binary(Event.BinaryRequest msg) {
+        return new BinaryRequestEvent(msg.getNickname(), msg.getMessage().toByteArray(), msg.getTimestamp());
+    }
+
+    /**
+     * 日志中的一条房间消息
+     */
+    static Event.RoomMessage message(IEvent event) {
+        if (event instanceof TextRequestEvent request) return Event.RoomMessage.newBuilder().setText(text(request)).build();
+        if (event instanceof BinaryRequestEvent request) return Event.RoomMessage.newBuilder().setBinary(binary(request)).build();
+        throw new IllegalArgumentException("Unsupported room message: " + event.getClass().getName());
+    }
+
+    static List<IEvent> messages(List<Event.RoomMessage> messages) {
+        List<IEvent> result = new ArrayList<>(messages.size());
+        for (Event.RoomMessage message : messages) {
+            if (message.hasText()) result.add(text(message.getText()));
+            else if (message.hasBinary()) result.add(binary(message.getBinary()));
+        }
+        return result;
+    }
+}
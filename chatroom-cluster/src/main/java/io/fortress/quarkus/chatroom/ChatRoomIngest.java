@@ -0,0 +1,201 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.runtime.Startup;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.pekko.Done;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.cluster.pubsub.DistributedPubSub;
+import org.apache.pekko.cluster.pubsub.DistributedPubSubMediator;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.ActorAttributes;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.OverflowStrategy;
+import org.apache.pekko.stream.Supervision;
+import org.apache.pekko.stream.javadsl.Keep;
+import org.apache.pekko.stream.javadsl.MergeHub;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.stream.javadsl.SourceQueueWithComplete;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 Pekko Streams 的帧处理管道, chatroom.ingest.enabled 开启
+ * <p>
+ * 入站: 每个连接一个 Source.queue, 通过 MergeHub 汇入节点共享的同一个图, 依次完成校验、限速和路由;
+ * 队列满时 offer 不会完成, WebSocket 回调返回的 Uni 随之挂起, 背压一直传到 socket 读取.
+ * 出站: 每个连接一个 Source.queue, 按下游需求以最多 maxInFlight 个并发写入 socket, 队列满时按 session.outbound.policy 处理,
+ * 不支持 coalesce, 该组合在启动时拒绝.
+ * 共享图中单帧的异常只跳过该帧, 不会结束整个管道.
+ */
+@Startup
+@ApplicationScoped
+public class ChatRoomIngest {
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(ChatRoomIngest.class);
+
+    /**
+     * 入站帧
+     *
+     * @param room  房间ID
+     * @param event TextRequestEvent / BinaryRequestEvent
+     */
+    public record Inbound(
+            String room,
+            IEvent event
+    ) {
+    }
+
+    /**
+     * 连接的出站管道
+     *
+     * @param queue 出站队列
+     * @param done  队列结束并且所有写入完成后完成
+     */
+    public record Outbound(
+            SourceQueueWithComplete<IResponseEvent> queue,
+            CompletionStage<Done> done
+    ) {
+    }
+
+    static final Uni<Void> DONE = Uni.createFrom().voidItem();
+
+    @Inject
+    ChatRoomMetrics metrics;
+
+    final ChatRoomClusterConfig config;
+    final ActorSystem system;
+    final Materializer materializer;
+    final Map<String, SourceQueueWithComplete<Inbound>> queues = new ConcurrentHashMap<>();
+    final Sink<Inbound, NotUsed> hub;
+
+    public ChatRoomIngest(ActorContainer container, ChatRoomClusterConfig config) {
+        this.config = config;
+        this.system = container.system();
+        this.materializer = Materializer.matFromSystem(system);
+
+        ChatRoomClusterConfig.Ingest ingest = config.ingest();
+        if (ingest.enabled() && config.session().outbound().policy() == ChatRoomOutbound.OverflowPolicy.COALESCE) {
+            throw new IllegalStateException("chatroom.session.outbound.policy=coalesce is not supported with chatroom.ingest.enabled=true");
+        }
+        Source<Inbound, Sink<Inbound, NotUsed>> source = MergeHub.of(Inbound.class, ingest.hubBuffer())
+                .filter(this::valid);
+        if (ingest.rate() > 0) source = source.throttle(ingest.rate(), Duration.ofSeconds(1));
+
+        // the hub is shared by every connection of the node, a failing frame is skipped instead of failing the graph
+        this.hub = source.to(Sink.foreach(this::route))
+                .withAttributes(ActorAttributes.withSupervisionStrategy(e -> {
+                    logger.warn("Ingest frame failed, resuming", e);
+                    return Supervision.resume();
+                }))
+                .run(materializer);
+    }
+
+    /**
+     * 连接建立时创建入站队列
+     */
+    public void open(String id) {
+        queues.put(id, Source.<Inbound>queue(config.ingest().bufferSize(), OverflowStrategy.backpressure())
+                .to(hub)
+                .run(materializer));
+    }
+
+    /**
+     * 连接断开时结束入站队列
+     */
+    public void close(String id) {
+        SourceQueueWithComplete<Inbound> queue = queues.remove(id);
+        if (!Objects.isNull(queue)) queue.complete();
+    }
+
+    /**
+     * 入站帧进入管道, 返回的 Uni 在队列接受后完成
+     */
+    public Uni<Void> offer(String id, String room, IEvent event) {
+        SourceQueueWithComplete<Inbound> queue = queues.get(id);
+        if (Objects.isNull(queue)) return DONE;
+        return Uni.createFrom().completionStage(queue.offer(new Inbound(room, event))).replaceWithVoid();
+    }
+
+    /**
+     * 连接的出站管道, 队列满时按 session.outbound.policy 处理: 丢弃最早或最新的帧, 或者断开慢速客户端
+     */
+    public Outbound outbound(WebSocketConnection connection) {
+        ChatRoomClusterConfig.Outbound outbound = config.session().outbound();
+        Pair<SourceQueueWithComplete<IResponseEvent>, CompletionStage<Done>> pair = Source.<IResponseEvent>queue(outbound.capacity(), overflow(outbound.policy()))
+                .mapAsync(config.session().maxInFlight(), frame -> send(connection, frame))
+                .toMat(Sink.ignore(), Keep.both())
+                .run(materializer);
+
+        // OverflowStrategy.fail ends the stream with a BufferOverflowException
+        if (outbound.policy() == ChatRoomOutbound.OverflowPolicy.DISCONNECT) pair.second().whenComplete((done, e) -> {
+            if (Objects.isNull(e) || !connection.isOpen()) return;
+            ChatRoomOutbound.DISCONNECTED.increment();
+            connection.close(ChatRoomOutbound.SLOW_CONSUMER).subscribe().with(ok -> {
+            }, failure -> {
+            });
+        });
+        return new Outbound(pair.first(), pair.second());
+    }
+
+    static OverflowStrategy overflow(ChatRoomOutbound.OverflowPolicy policy) {
+        return switch (policy) {
+            case DROP_OLDEST -> OverflowStrategy.dropHead();
+            case DROP_NEWEST -> OverflowStrategy.dropNew();
+            case DISCONNECT -> OverflowStrategy.fail();
+            case COALESCE -> throw new IllegalStateException("Unsupported outbound policy: " + policy);
+        };
+    }
+
+    CompletionStage<Void> send(WebSocketConnection connection, IResponseEvent frame) {
+        Uni<Void> uni;
+        if (frame instanceof BinaryResponseEvent binary) {
+            metrics.binarySent(binary.message().length());
+            uni = connection.sendBinary(binary.message());
+        } else {
+            String message = ((TextResponseEvent) frame).message();
+            metrics.textSent(message);
+            uni = connection.sendText(message);
+        }
+        long started = System.nanoTime();
+
+        // a failed write completes with null, which mapAsync skips, so one failure does not stop the stream
+        return uni.subscribeAsCompletionStage().handle((ok, e) -> {
+            metrics.sendCompleted(started, e);
+            return null;
+        });
+    }
+
+    boolean valid(Inbound inbound) {
+        int max = config.ingest().maxFrameSize();
+        if (inbound.event() instanceof TextRequestEvent text) return !text.message().isEmpty() && text.message().length() <= max;
+        if (inbound.event() instanceof BinaryRequestEvent binary) return binary.message().length > 0 && binary.message().length <= max;
+        return false;
+    }
+
+    /**
+     * 路由到房间: 直接发布到房间主题
+     */
+    void route(Inbound inbound) {
+        DistributedPubSub.get(system).mediator().tell(new DistributedPubSubMediator.Publish(
+                ChatRoomClusterBootstrap.topicOf(system, inbound.room()),
+                inbound.event()
+        ), ActorRef.noSender());
+    }
+}
@@ -0,0 +1,32 @@
+package io.fortress.quarkus.chatroom;
+
+/**
+ * JSON 输出工具, 帧和管理接口手工拼接 JSON 时使用
+ */
+public final class ChatRoomJson {
+
+    private ChatRoomJson() {
+    }
+
+    /**
+     * 追加带引号并转义的 JSON 字符串
+     */
+    public static void quote(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) builder.append("\\u%04x".formatted((int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+        builder.append('"');
+    }
+}
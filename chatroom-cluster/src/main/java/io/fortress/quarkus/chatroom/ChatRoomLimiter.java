@@ -0,0 +1,124 @@
+package io.fortress.quarkus.chatroom;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 入站帧限流
+ * <p>
+ * 每个连接和每个房间各一个 {@link TokenBucket}, 帧在交给会话 Actor 之前先通过连接桶, 再通过房间桶,
+ * 房间桶超限时退还连接桶的令牌, 被丢弃的帧不占用连接的额度; 房间桶按节点计算, 在最后一个本地连接离开时移除. rate 为 0 时对应的桶不启用.
+ */
+@ApplicationScoped
+public class ChatRoomLimiter {
+
+    /**
+     * 超出限制时的处理
+     */
+    public enum Action {
+        /**
+         * 丢弃该帧
+         */
+        DROP,
+        /**
+         * 延迟到令牌可用, 最长 max-delay, 超过后丢弃
+         */
+        DELAY,
+        /**
+         * 关闭连接, 只对连接桶生效, 房间超限时丢弃
+         */
+        CLOSE
+    }
+
+    /**
+     * 连接超出限制
+     */
+    public static final long SESSION = -1;
+
+    /**
+     * 房间超出限制
+     */
+    public static final long ROOM = -2;
+
+    /**
+     * 房间令牌桶, members 为本地连接数量
+     */
+    static final class Room {
+        final TokenBucket bucket;
+        final AtomicInteger members = new AtomicInteger();
+
+        Room(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    final ChatRoomClusterConfig.Limit config;
+    final long maxWait;
+    final Map<String, TokenBucket> sessions = new ConcurrentHashMap<>();
+    final Map<String, Room> rooms = new ConcurrentHashMap<>();
+
+    public ChatRoomLimiter(ChatRoomClusterConfig config) {
+        this.config = config.limit();
+        this.maxWait = this.config.action() == Action.DELAY ? this.config.maxDelay().toNanos() : 0;
+    }
+
+    public Action action() {
+        return config.action();
+    }
+
+    /**
+     * 连接建立
+     */
+    public void open(String id, String room) {
+        ChatRoomClusterConfig.Bucket session = config.session();
+        if (session.rate() > 0) sessions.put(id, new TokenBucket(session.rate(), burst(session)));
+
+        ChatRoomClusterConfig.Bucket limit = config.room();
+        if (limit.rate() > 0) rooms.compute(room, (key, value) -> {
+            Room entry = Objects.isNull(value) ? new Room(new TokenBucket(limit.rate(), burst(limit))) : value;
+            entry.members.incrementAndGet();
+            return entry;
+        });
+    }
+
+    /**
+     * 连接断开
+     */
+    public void close(String id, String room) {
+        sessions.remove(id);
+        rooms.computeIfPresent(room, (key, value) -> value.members.decrementAndGet() == 0 ? null : value);
+    }
+
+    /**
+     * 申请一帧
+     *
+     * @return 需要延迟的纳秒数, 0 表示立即通过; 超限时返回 {@link #SESSION} 或 {@link #ROOM}
+     */
+    public long acquire(String id, String room) {
+        long now = System.nanoTime();
+        long wait = 0;
+        TokenBucket session = sessions.get(id);
+        if (!Objects.isNull(session)) {
+            wait = session.acquire(now, maxWait);
+            if (wait == TokenBucket.REJECTED) return SESSION;
+        }
+        Room entry = rooms.get(room);
+        if (!Objects.isNull(entry)) {
+            long roomWait = entry.bucket.acquire(now, maxWait);
+            if (roomWait == TokenBucket.REJECTED) {
+                if (!Objects.isNull(session)) session.release();
+                return ROOM;
+            }
+            wait = Math.max(wait, roomWait);
+        }
+        return wait;
+    }
+
+    static int burst(ChatRoomClusterConfig.Bucket bucket) {
+        return bucket.burst() > 0 ? bucket.burst() : bucket.rate();
+    }
+}
@@ -0,0 +1,190 @@
+package io.fortress.quarkus.chatroom;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.Startup;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天室指标, 由 quarkus-micrometer 以 prometheus 格式暴露在 /q/metrics
+ * <p>
+ * 所有指标在启动时注册一次, 热路径上只做计数, 不再按名称查找.
+ */
+@Startup
+@ApplicationScoped
+public class ChatRoomMetrics {
+
+    final Counter textIn;
+    final Counter binaryIn;
+    final Counter bytesIn;
+    final Counter textOut;
+    final Counter binaryOut;
+    final Counter bytesOut;
+    final Counter sendFailures;
+    final Counter heartbeatFailures;
+    final Counter sessionThrottled;
+    final Counter roomThrottled;
+    final Counter delayed;
+    final Timer sendLatency;
+    final Timer broadcastLatency;
+    final DistributionSummary fanout;
+
+    public ChatRoomMetrics(MeterRegistry registry, SessionRegistry sessions) {
+        Gauge.builder("chatroom.sessions.active", sessions, SessionRegistry::online)
+                .description("Open websocket sessions on this node")
+                .register(registry);
+        FunctionCounter.builder("chatroom.sessions.connected", sessions, SessionRegistry::connectedTotal)
+                .register(registry);
+        FunctionCounter.builder("chatroom.sessions.disconnected", sessions, SessionRegistry::disconnectedTotal)
+                .register(registry);
+
+        // outbound queues: the session mailbox only holds frames that are immediately handed to the outbound,
+        // so the queued gauge is the backlog of this node
+        Gauge.builder("chatroom.outbound.queued", ChatRoomOutbound.QUEUED, LongAdder::doubleValue)
+                .description("Frames waiting in session outbound queues")
+                .register(registry);
+        FunctionCounter.builder("chatroom.outbound.dropped", ChatRoomOutbound.DROPPED, LongAdder::doubleValue)
+                .register(registry);
+        FunctionCounter.builder("chatroom.outbound.disconnected", ChatRoomOutbound.DISCONNECTED, LongAdder::doubleValue)
+                .register(registry);
+
+        // session actors run on the counting session-mailbox, see application.properties
+        Gauge.builder("chatroom.mailbox.depth", CountingMailbox.depth("session"), LongAdder::doubleValue)
+                .description("Messages waiting in session actor mailboxes")
+                .tag("actor", "session")
+                .register(registry);
+
+        this.textIn = frames(registry, "in", "text");
+        this.binaryIn = frames(registry, "in", "binary");
+        this.textOut = frames(registry, "out", "text");
+        this.binaryOut = frames(registry, "out", "binary");
+        this.bytesIn = Counter.builder("chatroom.frames.size")
+                .description("Payload size, text frames are counted in UTF-8 bytes")
+                .baseUnit("bytes")
+                .tag("direction", "in")
+                .register(registry);
+        this.bytesOut = Counter.builder("chatroom.frames.size")
+                .description("Payload size, text frames are counted in UTF-8 bytes")
+                .baseUnit("bytes")
+                .tag("direction", "out")
+                .register(registry);
+        this.sendFailures = Counter.builder("chatroom.send.failures").register(registry);
+        this.heartbeatFailures = Counter.builder("chatroom.heartbeat.failures").register(registry);
+        this.sessionThrottled = throttled(registry, "session");
+        this.roomThrottled = throttled(registry, "room");
+        this.delayed = Counter.builder("chatroom.frames.delayed")
+                .description("Inbound frames held back until the rate limit allowed them")
+                .register(registry);
+        this.sendLatency = Timer.builder("chatroom.send.latency")
+                .description("Websocket write, from submit to completion")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.broadcastLatency = Timer.builder("chatroom.broadcast.latency")
+                .description("End to end, from ingress on any node to fan-out in the room")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.fanout = DistributionSummary.builder("chatroom.room.fanout")
+                .description("Local members reached by one broadcast")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    static Counter frames(MeterRegistry registry, String direction, String type) {
+        return Counter.builder("chatroom.frames")
+                .tag("direction", direction)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    static Counter throttled(MeterRegistry registry, String scope) {
+        return Counter.builder("chatroom.frames.throttled")
+                .description("Inbound frames over the rate limit, dropped or closing the connection")
+                .tag("scope", scope)
+                .register(registry);
+    }
+
+    public void textReceived(String message) {
+        textIn.increment();
+        bytesIn.increment(utf8Length(message));
+    }
+
+    public void binaryReceived(byte[] message) {
+        binaryIn.increment();
+        bytesIn.increment(message.length);
+    }
+
+    public void textSent(String message) {
+        textOut.increment();
+        bytesOut.increment(utf8Length(message));
+    }
+
+    public void binarySent(int length) {
+        binaryOut.increment();
+        bytesOut.increment(length);
+    }
+
+    /**
+     * 文本的 UTF-8 编码长度, 不做编码也不分配
+     */
+    static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // the pair is 4 bytes for 2 chars
+                bytes += 2;
+                i++;
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 写入完成, 可以在任意线程调用
+     */
+    public void sendCompleted(long startedNanos, Throwable failure) {
+        sendLatency.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+        if (failure != null) sendFailures.increment();
+    }
+
+    public void heartbeatFailed() {
+        heartbeatFailures.increment();
+    }
+
+    /**
+     * 入站帧超出限流
+     *
+     * @param room true 为房间限制, false 为连接限制
+     */
+    public void throttled(boolean room) {
+        (room ? roomThrottled : sessionThrottled).increment();
+    }
+
+    public void delayed() {
+        delayed.increment();
+    }
+
+    /**
+     * 房间广播
+     *
+     * @param timestamp 消息进入集群时的毫秒时间戳
+     * @param members   本地接收成员数量
+     */
+    public void broadcast(long timestamp, int members) {
+        if (timestamp > 0) broadcastLatency.record(Math.max(0, System.currentTimeMillis() - timestamp), TimeUnit.MILLISECONDS);
+        fanout.record(members);
+    }
+}
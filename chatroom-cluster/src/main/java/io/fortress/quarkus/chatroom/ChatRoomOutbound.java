@@ -0,0 +1,217 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.BinaryResponseEvent;
+import io.fortress.quarkus.chatroom.event.IResponseEvent;
+import io.fortress.quarkus.chatroom.event.SendCompletedEvent;
+import io.fortress.quarkus.chatroom.event.TextResponseEvent;
+import io.quarkus.websockets.next.CloseReason;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.smallrye.mutiny.Uni;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.pattern.Patterns;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话异步写出
+ * <p>
+ * 写入不阻塞 Actor 线程, 完成结果以 {@link SendCompletedEvent} 投递回会话 Actor;
+ * 同时在途的写入数量受 maxInFlight 限制, 超出部分进入容量为 capacity 的发送队列,
+ * 队列满时按 {@link OverflowPolicy} 处理.
+ * 只能在所属 Actor 内部访问, 非线程安全.
+ */
+public final class ChatRoomOutbound {
+
+    /**
+     * 发送队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃最早排队的帧
+         */
+        DROP_OLDEST,
+        /**
+         * 丢弃新到达的帧
+         */
+        DROP_NEWEST,
+        /**
+         * 队尾和新帧都是单行聊天文本时合并, 否则丢弃最早排队的帧
+         */
+        COALESCE,
+        /**
+         * 断开慢速客户端
+         */
+        DISCONNECT
+    }
+
+    /**
+     * 慢速客户端断开原因
+     */
+    static final CloseReason SLOW_CONSUMER = new CloseReason(1008, "Slow consumer");
+
+    /**
+     * 节点内所有会话的排队帧数量
+     */
+    static final LongAdder QUEUED = new LongAdder();
+
+    /**
+     * 节点内因队列满丢弃或合并的帧数量
+     */
+    static final LongAdder DROPPED = new LongAdder();
+
+    /**
+     * 节点内因队列满断开的会话数量
+     */
+    static final LongAdder DISCONNECTED = new LongAdder();
+
+    final WebSocketConnection connection;
+    final ActorRef self;
+    final Executor executor;
+    final int maxInFlight;
+    final int capacity;
+    final OverflowPolicy policy;
+    final ChatRoomMetrics metrics;
+    final Deque<IResponseEvent> pending = new ArrayDeque<>();
+    int inFlight;
+    int highWaterMark;
+    boolean closing;
+
+    public ChatRoomOutbound(WebSocketConnection connection, ActorRef self, Executor executor, int maxInFlight, int capacity, OverflowPolicy policy, ChatRoomMetrics metrics) {
+        this.connection = connection;
+        this.self = self;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 写出响应帧, 在途写入已满时排队
+     */
+    public void send(IResponseEvent event) {
+        if (closing) return;
+        if (inFlight < maxInFlight) {
+            write(event);
+            return;
+        }
+        if (pending.size() < capacity) {
+            enqueue(event);
+            return;
+        }
+
+        // overflow
+        switch (policy) {
+            case DROP_OLDEST -> {
+                dequeue();
+                enqueue(event);
+                DROPPED.increment();
+            }
+            case DROP_NEWEST -> DROPPED.increment();
+            case COALESCE -> {
+                IResponseEvent merged = coalesce(pending.peekLast(), event);
+                if (merged == null) {
+                    dequeue();
+                    enqueue(event);
+                } else {
+                    pending.pollLast();
+                    pending.addLast(merged);
+                }
+                DROPPED.increment();
+            }
+            case DISCONNECT -> {
+                closing = true;
+                clear();
+                DISCONNECTED.increment();
+                connection.close(SLOW_CONSUMER).subscribe().with(ok -> {
+                }, e -> {
+                });
+            }
+        }
+    }
+
+    /**
+     * 写入完成, 继续写出排队的响应帧
+     */
+    public void completed(SendCompletedEvent event) {
+        inFlight--;
+        while (inFlight < maxInFlight && !pending.isEmpty()) write(dequeue());
+    }
+
+    /**
+     * 清空发送队列, 会话停止时调用
+     */
+    public void clear() {
+        QUEUED.add(-pending.size());
+        pending.clear();
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+    public static long queued() {
+        return QUEUED.sum();
+    }
+
+    public static long dropped() {
+        return DROPPED.sum();
+    }
+
+    public static long disconnected() {
+        return DISCONNECTED.sum();
+    }
+
+    void enqueue(IResponseEvent event) {
+        pending.addLast(event);
+        QUEUED.increment();
+        if (pending.size() > highWaterMark) highWaterMark = pending.size();
+    }
+
+    IResponseEvent dequeue() {
+        IResponseEvent event = pending.pollFirst();
+        if (event != null) QUEUED.decrement();
+        return event;
+    }
+
+    static IResponseEvent coalesce(IResponseEvent last, IResponseEvent event) {
+        // binary frames carry no length prefix and JSON/control frames must stay whole, only chat lines are joined
+        if (last instanceof TextResponseEvent prev && prev.line() && event instanceof TextResponseEvent next && next.line()) {
+            return TextResponseEvent.line(prev.message() + "\n" + next.message());
+        }
+        return null;
+    }
+
+    void write(IResponseEvent event) {
+        if (!connection.isOpen()) {
+            clear();
+            return;
+        }
+        Uni<Void> uni;
+        if (event instanceof BinaryResponseEvent binary) {
+            metrics.binarySent(binary.message().length());
+            uni = connection.sendBinary(binary.message());
+        } else {
+            String message = ((TextResponseEvent) event).message();
+            metrics.textSent(message);
+            uni = connection.sendText(message);
+        }
+        inFlight++;
+        long started = System.nanoTime();
+        Patterns.pipe(uni.subscribeAsCompletionStage().handle((ok, e) -> {
+            metrics.sendCompleted(started, e);
+            return new SendCompletedEvent(e);
+        }), executor).to(self);
+    }
+}
@@ -0,0 +1,89 @@
+package io.fortress.quarkus.chatroom;
+
+import com.typesafe.config.Config;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.dispatch.Envelope;
+import org.apache.pekko.dispatch.MailboxType;
+import org.apache.pekko.dispatch.MessageQueue;
+import org.apache.pekko.dispatch.ProducesMessageQueue;
+import org.apache.pekko.dispatch.UnboundedMessageQueueSemantics;
+import scala.Option;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 计数邮箱
+ * <p>
+ * 无界邮箱, 入队和出队时更新按 name 汇总的节点级计数, 作为邮箱深度指标, 不需要遍历 Actor:
+ * <pre>
+ * session-mailbox {
+ *   mailbox-type = "io.fortress.quarkus.chatroom.CountingMailbox"
+ *   name = "session"
+ * }
+ * </pre>
+ */
+public class CountingMailbox implements MailboxType, ProducesMessageQueue<CountingMailbox.CountingQueue> {
+
+    /**
+     * 邮箱名称 -> 节点内所有该类邮箱中的消息数量
+     */
+    static final Map<String, LongAdder> DEPTHS = new ConcurrentHashMap<>();
+
+    final LongAdder depth;
+
+    public CountingMailbox(ActorSystem.Settings settings, Config config) {
+        this.depth = depth(config.hasPath("name") ? config.getString("name") : "default");
+    }
+
+    public static LongAdder depth(String name) {
+        return DEPTHS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new CountingQueue(depth);
+    }
+
+    public static class CountingQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+
+        final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        final LongAdder depth;
+
+        CountingQueue(LongAdder depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            queue.offer(handle);
+            depth.increment();
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope handle = queue.poll();
+            if (handle != null) depth.decrement();
+            return handle;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return queue.size();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            for (Envelope handle = dequeue(); handle != null; handle = dequeue()) deadLetters.enqueue(owner, handle);
+        }
+    }
+}
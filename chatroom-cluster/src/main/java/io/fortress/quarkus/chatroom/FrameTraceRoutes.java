@@ -0,0 +1,57 @@
+package io.fortress.quarkus.chatroom;
+
+import jakarta.enterprise.inject.spi.CDI;
+import org.apache.pekko.http.javadsl.model.ContentTypes;
+import org.apache.pekko.http.javadsl.model.HttpEntities;
+import org.apache.pekko.http.javadsl.model.StatusCodes;
+import org.apache.pekko.http.javadsl.server.AllDirectives;
+import org.apache.pekko.http.javadsl.server.Route;
+import org.apache.pekko.http.javadsl.unmarshalling.StringUnmarshallers;
+import org.apache.pekko.management.javadsl.ManagementRouteProvider;
+import org.apache.pekko.management.javadsl.ManagementRouteProviderSettings;
+
+/**
+ * 帧采样追踪的管理接口, 挂载在 pekko management 上, 运行时开关采样
+ * <p>
+ * GET:    /chatroom/trace                         最近采样的帧
+ * PUT:    /chatroom/trace?rate={n}                全局采样率, 0 关闭
+ * PUT:    /chatroom/trace?rate={n}&session={id}   单个会话的采样率, -1 恢复全局采样率
+ */
+public class FrameTraceRoutes extends AllDirectives implements ManagementRouteProvider {
+
+    @Override
+    public Route routes(ManagementRouteProviderSettings settings) {
+        return pathPrefix("chatroom", () -> path("trace", () -> concat(
+                get(() -> complete(HttpEntities.create(ContentTypes.APPLICATION_JSON, json(tracer())))),
+                put(() -> parameter(StringUnmarshallers.INTEGER, "rate", rate -> parameterOptional("session", session -> {
+                    if (session.isPresent()) tracer().sampleRate(session.get(), rate);
+                    else tracer().sampleRate(rate);
+                    return complete(StatusCodes.OK);
+                })))
+        )));
+    }
+
+    /**
+     * route provider 由 pekko management 反射创建, 通过 CDI 查找追踪实例
+     */
+    static FrameTracer tracer() {
+        return CDI.current().select(FrameTracer.class).get();
+    }
+
+    static String json(FrameTracer tracer) {
+        StringBuilder builder = new StringBuilder("{\"sampleRate\":").append(tracer.sampleRate()).append(",\"frames\":[");
+        boolean first = true;
+        for (FrameTracer.Frame frame : tracer.recent()) {
+            if (!first) builder.append(',');
+            first = false;
+            builder.append("{\"timestamp\":").append(frame.timestamp()).append(",\"session\":");
+            ChatRoomJson.quote(builder, frame.session());
+            builder.append(",\"direction\":");
+            ChatRoomJson.quote(builder, frame.direction());
+            builder.append(",\"length\":").append(frame.length()).append(",\"preview\":");
+            ChatRoomJson.quote(builder, frame.preview());
+            builder.append('}');
+        }
+        return builder.append("]}").toString();
+    }
+}
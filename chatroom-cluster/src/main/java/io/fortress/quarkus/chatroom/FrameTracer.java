@@ -0,0 +1,120 @@
+package io.fortress.quarkus.chatroom;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 帧采样追踪
+ * <p>
+ * 替代热路径上逐帧的 INFO 日志: 调用方先用 {@link #sampled(String)} 判断, 命中采样才构建帧摘要;
+ * 采样率 N 表示平均每 N 帧记录 1 帧, 0 表示关闭, 可以按会话单独设置;
+ * 最近的帧保存在固定大小的环形缓冲区中.
+ */
+@ApplicationScoped
+public class FrameTracer {
+
+    /**
+     * 帧摘要
+     *
+     * @param timestamp 时间戳(ms)
+     * @param session   连接ID
+     * @param direction in/out
+     * @param length    帧长度
+     * @param preview   内容预览, 二进制为十六进制
+     */
+    public record Frame(
+            long timestamp,
+            String session,
+            String direction,
+            int length,
+            String preview
+    ) {
+    }
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(FrameTracer.class);
+
+    final Map<String, Integer> sessions = new ConcurrentHashMap<>();
+    final AtomicLong sequence = new AtomicLong();
+    final AtomicReferenceArray<Frame> frames;
+    final int preview;
+    volatile int sampleRate;
+
+    public FrameTracer(ChatRoomClusterConfig config) {
+        this.frames = new AtomicReferenceArray<>(config.trace().capacity());
+        this.preview = config.trace().preview();
+        this.sampleRate = config.trace().sampleRate();
+    }
+
+    /**
+     * 当前帧是否需要记录
+     */
+    public boolean sampled(String session) {
+        int rate = sessions.isEmpty() ? sampleRate : sessions.getOrDefault(session, sampleRate);
+        return rate > 0 && (rate == 1 || ThreadLocalRandom.current().nextInt(rate) == 0);
+    }
+
+    public void text(String session, String direction, String message) {
+        record(session, direction, message.length(), message.length() > preview ? message.substring(0, preview) : message);
+    }
+
+    public void binary(String session, String direction, byte[] message) {
+        record(session, direction, message.length, HexFormat.of().formatHex(message, 0, Math.min(preview, message.length)));
+    }
+
+    /**
+     * 最近记录的帧, 从旧到新
+     */
+    public List<Frame> recent() {
+        long end = sequence.get();
+        long start = Math.max(0, end - frames.length());
+        List<Frame> recent = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Frame frame = frames.get((int) (i % frames.length()));
+            if (!Objects.isNull(frame)) recent.add(frame);
+        }
+        return recent;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public void sampleRate(int rate) {
+        this.sampleRate = Math.max(0, rate);
+    }
+
+    /**
+     * 单独设置会话的采样率, 小于 0 时恢复为全局采样率
+     */
+    public void sampleRate(String session, int rate) {
+        if (rate < 0) sessions.remove(session);
+        else sessions.put(session, rate);
+    }
+
+    /**
+     * 会话关闭时移除它的采样率设置
+     */
+    public void forget(String session) {
+        sessions.remove(session);
+    }
+
+    void record(String session, String direction, int length, String preview) {
+        Frame frame = new Frame(System.currentTimeMillis(), session, direction, length, preview);
+        frames.set((int) (sequence.getAndIncrement() % frames.length()), frame);
+        if (logger.isDebugEnabled()) logger.debug("Trace {} {} [{}]: {}", direction, session, length, preview);
+    }
+}
@@ -0,0 +1,140 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.runtime.Startup;
+import io.quarkus.websockets.next.CloseReason;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.vertx.core.buffer.Buffer;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Cancellable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 节点级心跳时间轮
+ * <p>
+ * 连接按注册顺序轮流分配到 slots 个槽位, 节点只保留一个定时任务, 每隔 interval / slots 扫描一个槽位,
+ * 对槽位中的连接直接发送异步 ping, 不经过会话 Actor 的邮箱;
+ * 同一周期的心跳分散到整个 interval 内, 超过 idleTimeout 没有收到 pong 的连接被关闭.
+ */
+@Startup
+@ApplicationScoped
+public class HeartbeatWheel {
+
+    /**
+     * 心跳帧, 只读共享
+     */
+    static final Buffer PING = Buffer.buffer("Heartbeat");
+
+    /**
+     * 空闲超时断开原因
+     */
+    static final CloseReason IDLE_TIMEOUT = new CloseReason(1001, "Idle timeout");
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(HeartbeatWheel.class);
+
+    /**
+     * 心跳连接
+     */
+    static final class Beat {
+        final WebSocketConnection connection;
+        final Set<Beat> slot;
+        volatile long lastPong;
+
+        Beat(WebSocketConnection connection, Set<Beat> slot, long lastPong) {
+            this.connection = connection;
+            this.slot = slot;
+            this.lastPong = lastPong;
+        }
+    }
+
+    final Map<String, Beat> beats = new ConcurrentHashMap<>();
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger cursor = new AtomicInteger();
+    final Set<Beat>[] slots;
+    final long idleTimeout;
+    final Cancellable ticker;
+    final ChatRoomMetrics metrics;
+
+    @SuppressWarnings("unchecked")
+    public HeartbeatWheel(ActorContainer container, ChatRoomClusterConfig config, ChatRoomMetrics metrics) {
+        this.metrics = metrics;
+        ChatRoomClusterConfig.Heartbeat heartbeat = config.heartbeat();
+        this.slots = new Set[heartbeat.slots()];
+        for (int i = 0; i < slots.length; i++) slots[i] = ConcurrentHashMap.newKeySet();
+        this.idleTimeout = heartbeat.idleTimeout().toMillis();
+
+        ActorSystem system = container.system();
+        Duration tick = heartbeat.interval().dividedBy(slots.length);
+        this.ticker = system.scheduler().scheduleAtFixedRate(tick, tick, this::tick, system.dispatcher());
+    }
+
+    @PreDestroy
+    void destroy() {
+        ticker.cancel();
+    }
+
+    public void register(WebSocketConnection connection) {
+        Set<Beat> slot = slots[Math.floorMod(next.getAndIncrement(), slots.length)];
+        Beat beat = new Beat(connection, slot, System.currentTimeMillis());
+        beats.put(connection.id(), beat);
+        slot.add(beat);
+    }
+
+    public void unregister(String id) {
+        Beat beat = beats.remove(id);
+        if (!Objects.isNull(beat)) beat.slot.remove(beat);
+    }
+
+    /**
+     * 收到 pong
+     */
+    public void pong(String id) {
+        Beat beat = beats.get(id);
+        if (!Objects.isNull(beat)) beat.lastPong = System.currentTimeMillis();
+    }
+
+    public int size() {
+        return beats.size();
+    }
+
+    /**
+     * 扫描下一个槽位
+     */
+    void tick() {
+        Set<Beat> slot = slots[Math.floorMod(cursor.getAndIncrement(), slots.length)];
+        long now = System.currentTimeMillis();
+        for (Beat beat : slot) {
+            WebSocketConnection connection = beat.connection;
+            if (!connection.isOpen()) {
+                unregister(connection.id());
+            } else if (now - beat.lastPong > idleTimeout) {
+                logger.info("Idle timeout: {}", connection.id());
+                unregister(connection.id());
+                connection.close(IDLE_TIMEOUT).subscribe().with(ok -> {
+                }, e -> {
+                });
+            } else {
+                connection.sendPing(PING).subscribe().with(ok -> {
+                }, this::failed);
+            }
+        }
+    }
+
+    void failed(Throwable e) {
+        metrics.heartbeatFailed();
+        logger.warn("Heartbeat failed: {}", e.getMessage());
+    }
+}
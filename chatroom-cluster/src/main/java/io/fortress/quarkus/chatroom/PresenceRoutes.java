@@ -0,0 +1,64 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.PresenceEvent;
+import io.fortress.quarkus.chatroom.event.PresenceQueryEvent;
+import jakarta.enterprise.inject.spi.CDI;
+import org.apache.pekko.http.javadsl.model.ContentTypes;
+import org.apache.pekko.http.javadsl.model.HttpEntities;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.http.javadsl.server.AllDirectives;
+import org.apache.pekko.http.javadsl.server.Route;
+import org.apache.pekko.management.javadsl.ManagementRouteProvider;
+import org.apache.pekko.management.javadsl.ManagementRouteProviderSettings;
+import org.apache.pekko.pattern.Patterns;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 在线查询的管理接口, 挂载在 pekko management 上, 由本节点的 Distributed Data 副本直接应答
+ * <p>
+ * GET:    /chatroom/presence          集群在线总数
+ * GET:    /chatroom/presence/{room}   房间在线数量和成员昵称
+ */
+public class PresenceRoutes extends AllDirectives implements ManagementRouteProvider {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(3);
+
+    @Override
+    public Route routes(ManagementRouteProviderSettings settings) {
+        return pathPrefix("chatroom", () -> pathPrefix("presence", () -> get(() -> concat(
+                pathEnd(() -> completeWithFuture(query(new PresenceQueryEvent(null, false)))),
+                path(room -> completeWithFuture(query(new PresenceQueryEvent(room, true))))
+        ))));
+    }
+
+    static CompletionStage<HttpResponse> query(PresenceQueryEvent query) {
+        return Patterns.ask(bootstrap().getPresence(), query, TIMEOUT)
+                .thenApply(reply -> HttpResponse.create().withEntity(HttpEntities.create(ContentTypes.APPLICATION_JSON, json((PresenceEvent) reply))));
+    }
+
+    /**
+     * route provider 由 pekko management 反射创建, 通过 CDI 查找
+     */
+    static ChatRoomClusterBootstrap.Bootstrap bootstrap() {
+        return CDI.current().select(ChatRoomClusterBootstrap.Bootstrap.class).get();
+    }
+
+    static String json(PresenceEvent presence) {
+        StringBuilder builder = new StringBuilder("{\"online\":").append(presence.online());
+        if (presence.room() == null) return builder.append('}').toString();
+        builder.append(",\"room\":");
+        ChatRoomJson.quote(builder, presence.room());
+        builder.append(",\"count\":").append(presence.count());
+        if (!presence.members().isEmpty()) {
+            builder.append(",\"members\":[");
+            for (int i = 0; i < presence.members().size(); i++) {
+                if (i > 0) builder.append(',');
+                ChatRoomJson.quote(builder, presence.members().get(i));
+            }
+            builder.append(']');
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package io.fortress.quarkus.chatroom;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶限流
+ * <p>
+ * 以 GCRA 实现: 只保存下一个令牌的理论到达时间, 申请令牌是一次 CAS, 不分配对象;
+ * 每秒补充 rate 个令牌, 最多累积 burst 个. 可以在任意线程调用.
+ */
+public final class TokenBucket {
+
+    /**
+     * 超出限制
+     */
+    public static final long REJECTED = -1;
+
+    /**
+     * 每个令牌的间隔, 纳秒
+     */
+    final long interval;
+
+    /**
+     * 允许提前消耗的时间, 纳秒
+     */
+    final long tolerance;
+
+    /**
+     * 理论到达时间
+     */
+    final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(int rate, int burst) {
+        if (rate <= 0) throw new IllegalArgumentException("Rate must be positive: " + rate);
+        this.interval = 1_000_000_000L / rate;
+        this.tolerance = interval * (Math.max(burst, 1) - 1);
+    }
+
+    /**
+     * 申请一个令牌
+     *
+     * @param now     System.nanoTime()
+     * @param maxWait 允许等待的最长纳秒数, 0 表示不等待
+     * @return 需要等待的纳秒数, 0 表示立即通过; 超过 maxWait 时返回 {@link #REJECTED}, 不消耗令牌
+     */
+    public long acquire(long now, long maxWait) {
+        for (; ; ) {
+            long current = arrival.get();
+            long start = Math.max(current, now);
+            long wait = start - now - tolerance;
+            if (wait > maxWait) return REJECTED;
+            if (arrival.compareAndSet(current, start + interval)) return Math.max(0, wait);
+        }
+    }
+
+    /**
+     * 退还一个已经申请到的令牌
+     */
+    public void release() {
+        arrival.addAndGet(-interval);
+    }
+}
@@ -0,0 +1,84 @@
+package io.fortress.quarkus.chatroom.event;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 房间二进制消息
+ * <p>
+ * 同一条消息按连接协商的协议编码为两种帧, 每种帧只在第一次使用时编码一次, 之后被房间内所有会话共享:
+ * <pre>
+ * legacy  = "[room] nickname: [1, 2, 3]" 的 UTF-8 文本
+ * compact = type(1) nicknameLength(2) nickname(UTF-8) payload
+ * </pre>
+ * compact 帧中的 payload 保持客户端发送的原始字节.
+ */
+public final class BinaryMessageEvent implements IResponseEvent {
+
+    /**
+     * compact 帧类型: 二进制消息
+     */
+    public static final byte COMPACT_BINARY = 0x01;
+
+    final String room;
+    final String nickname;
+    final byte[] payload;
+    volatile BinaryResponseEvent legacy;
+    volatile BinaryResponseEvent compact;
+
+    public BinaryMessageEvent(String room, String nickname, byte[] payload) {
+        this.room = room;
+        this.nickname = nickname;
+        this.payload = payload;
+    }
+
+    /**
+     * 从 compact 帧还原, 类型或长度不符的帧抛出 IllegalArgumentException
+     */
+    public static BinaryMessageEvent fromCompact(String room, byte[] frame) {
+        if (frame.length < 3) throw new IllegalArgumentException("Compact frame too short: " + frame.length);
+        if (frame[0] != COMPACT_BINARY) throw new IllegalArgumentException("Unknown compact frame type: " + frame[0]);
+        int length = ((frame[1] & 0xFF) << 8) | (frame[2] & 0xFF);
+        if (3 + length > frame.length) throw new IllegalArgumentException("Compact nickname length " + length + " exceeds frame: " + frame.length);
+        String nickname = new String(frame, 3, length, StandardCharsets.UTF_8);
+        return new BinaryMessageEvent(room, nickname, Arrays.copyOfRange(frame, 3 + length, frame.length));
+    }
+
+    public String nickname() {
+        return nickname;
+    }
+
+    public byte[] payload() {
+        return payload;
+    }
+
+    /**
+     * 旧协议的文本渲染帧
+     */
+    public BinaryResponseEvent legacy() {
+        BinaryResponseEvent frame = legacy;
+        if (frame == null) {
+            String recv = "[%s] %s: %s".formatted(room, nickname, Arrays.toString(payload));
+            legacy = frame = new BinaryResponseEvent(Buffer.buffer(recv.getBytes(StandardCharsets.UTF_8)));
+        }
+        return frame;
+    }
+
+    /**
+     * 长度前缀的紧凑帧
+     */
+    public BinaryResponseEvent compact() {
+        BinaryResponseEvent frame = compact;
+        if (frame == null) {
+            byte[] name = nickname.getBytes(StandardCharsets.UTF_8);
+            compact = frame = new BinaryResponseEvent(Buffer.buffer(3 + name.length + payload.length)
+                    .appendByte(COMPACT_BINARY)
+                    .appendUnsignedShort(name.length)
+                    .appendBytes(name)
+                    .appendBytes(payload));
+        }
+        return frame;
+    }
+}
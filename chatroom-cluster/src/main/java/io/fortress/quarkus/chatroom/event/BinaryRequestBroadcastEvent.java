@@ -1,7 +0,0 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record BinaryRequestBroadcastEvent(
-        String nickname,
-        byte[] message
-) implements IEvent {
-}
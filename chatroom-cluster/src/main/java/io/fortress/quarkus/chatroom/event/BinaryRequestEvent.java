@@ -1,7 +1,11 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record BinaryRequestEvent(
-        String nickname,
-        byte[] message
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * timestamp 为消息进入节点时的毫秒时间戳, 用于统计端到端广播延迟
+ */
+public record BinaryRequestEvent(
+        String nickname,
+        byte[] message,
+        long timestamp
+) implements IEvent {
+}
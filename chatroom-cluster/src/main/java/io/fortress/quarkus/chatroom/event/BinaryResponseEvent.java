@@ -1,6 +1,13 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record BinaryResponseEvent(
-        byte[] message
-) {
-}
+package io.fortress.quarkus.chatroom.event;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * 二进制响应帧
+ * <p>
+ * Buffer 在广播时只编码一次, 同一个实例发送给房间内所有会话, 不能再修改.
+ */
+public record BinaryResponseEvent(
+        Buffer message
+) implements IResponseEvent {
+}
@@ -1,8 +1,8 @@
-package io.fortress.quarkus.chatroom.event;
-
-import io.quarkus.websockets.next.CloseReason;
-
-public record DisconnectedEvent(
-        CloseReason reason
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+import io.quarkus.websockets.next.CloseReason;
+
+public record DisconnectedEvent(
+        CloseReason reason
+) implements IEvent {
+}
@@ -0,0 +1,11 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 节点下线排空, 会话发送重连提示后在出站队列写完时应答 Done, 只在本节点内传递
+ *
+ * @param hint 重连提示帧
+ */
+public record DrainEvent(
+        String hint
+) implements IEvent {
+}
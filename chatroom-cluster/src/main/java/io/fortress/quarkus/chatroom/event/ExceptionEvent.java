@@ -1,6 +1,6 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record ExceptionEvent(
-        Exception exception
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record ExceptionEvent(
+        Exception exception
+) implements IEvent {
+}
@@ -0,0 +1,15 @@
+package io.fortress.quarkus.chatroom.event;
+
+import org.apache.pekko.actor.ActorRef;
+
+/**
+ * 节点内扇出任务, 只在本地传递
+ *
+ * @param members 本次投递的成员分区, 只读共享
+ * @param frame   响应帧
+ */
+public record FanoutEvent(
+        ActorRef[] members,
+        IResponseEvent frame
+) implements IEvent {
+}
@@ -1,4 +1,4 @@
-package io.fortress.quarkus.chatroom.event;
-
-public interface IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public interface IEvent {
+}
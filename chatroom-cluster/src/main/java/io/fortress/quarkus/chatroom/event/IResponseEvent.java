@@ -0,0 +1,7 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 发送给客户端的响应帧
+ */
+public interface IResponseEvent extends IEvent {
+}
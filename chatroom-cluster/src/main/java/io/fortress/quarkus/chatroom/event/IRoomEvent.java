@@ -0,0 +1,9 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 房间事件, 按 room 路由到分片实体
+ */
+public interface IRoomEvent extends IEvent {
+
+    String room();
+}
@@ -1,6 +1,7 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record JoinRoomBroadcastEvent(
-        String nickname
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record JoinRoomBroadcastEvent(
+        String room,
+        String nickname
+) implements IRoomEvent {
+}
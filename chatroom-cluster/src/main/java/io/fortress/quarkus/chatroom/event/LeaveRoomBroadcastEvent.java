@@ -1,6 +1,7 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record LeaveRoomBroadcastEvent(
-        String nickname
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record LeaveRoomBroadcastEvent(
+        String room,
+        String nickname
+) implements IRoomEvent {
+}
@@ -1,6 +1,6 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record LeaveRoomEvent(
-        String nickname
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record LeaveRoomEvent(
+        String nickname
+) implements IEvent {
+}
@@ -0,0 +1,19 @@
+package io.fortress.quarkus.chatroom.event;
+
+import java.util.List;
+
+/**
+ * 在线查询结果
+ *
+ * @param room    房间ID, 没有时为 null
+ * @param count   房间在线连接数量
+ * @param online  集群在线连接总数
+ * @param members 房间成员昵称, 只在 who 查询时返回
+ */
+public record PresenceEvent(
+        String room,
+        long count,
+        long online,
+        List<String> members
+) implements IEvent {
+}
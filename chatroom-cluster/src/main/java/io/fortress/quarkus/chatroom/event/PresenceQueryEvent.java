@@ -0,0 +1,13 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 在线查询, 只在本节点内传递
+ *
+ * @param room 房间ID, 为 null 时只查询集群在线总数
+ * @param who  是否返回成员昵称
+ */
+public record PresenceQueryEvent(
+        String room,
+        boolean who
+) implements IEvent {
+}
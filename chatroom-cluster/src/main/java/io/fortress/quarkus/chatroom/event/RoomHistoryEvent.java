@@ -0,0 +1,15 @@
+package io.fortress.quarkus.chatroom.event;
+
+import java.util.List;
+
+/**
+ * 房间实体保存的最近消息, 从旧到新
+ *
+ * @param room     房间ID
+ * @param messages TextRequestEvent / BinaryRequestEvent
+ */
+public record RoomHistoryEvent(
+        String room,
+        List<IEvent> messages
+) implements IEvent {
+}
@@ -0,0 +1,11 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 向房间实体查询日志中的最近消息, 回复 {@link RoomHistoryEvent}
+ *
+ * @param room 房间ID
+ */
+public record RoomHistoryQueryEvent(
+        String room
+) implements IRoomEvent {
+}
@@ -0,0 +1,11 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 房间最后一个本地成员离开后的保留时间到期
+ *
+ * @param room 房间ID
+ */
+public record RoomIdleEvent(
+        String room
+) implements IEvent {
+}
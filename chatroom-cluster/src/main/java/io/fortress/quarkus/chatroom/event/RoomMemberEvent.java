@@ -0,0 +1,17 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 房间成员变化, 只由 PersistentChatRoomEntity 写入日志
+ *
+ * @param room     房间ID
+ * @param node     成员所在节点 host:port
+ * @param nickname 昵称
+ * @param count    连接数量变化, 加入为 1, 离开为 -1, 节点移除时为该昵称剩余连接数量的负数
+ */
+public record RoomMemberEvent(
+        String room,
+        String node,
+        String nickname,
+        int count
+) implements IRoomEvent {
+}
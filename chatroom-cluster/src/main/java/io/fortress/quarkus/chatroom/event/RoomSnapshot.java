@@ -0,0 +1,18 @@
+package io.fortress.quarkus.chatroom.event;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 房间快照
+ *
+ * @param room     房间ID
+ * @param members  "节点/昵称" 及其连接数量
+ * @param messages 最近消息, 从旧到新, TextRequestEvent / BinaryRequestEvent
+ */
+public record RoomSnapshot(
+        String room,
+        Map<String, Integer> members,
+        List<IEvent> messages
+) implements IEvent {
+}
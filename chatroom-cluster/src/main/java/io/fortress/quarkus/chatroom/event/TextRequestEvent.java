@@ -1,8 +1,12 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record TextRequestEvent(
-        String nickname,
-        String message
-) implements IEvent {
-
-}
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * timestamp 为消息进入节点时的毫秒时间戳, 用于统计端到端广播延迟
+ */
+public record TextRequestEvent(
+        String nickname,
+        String message,
+        long timestamp
+) implements IEvent {
+
+}
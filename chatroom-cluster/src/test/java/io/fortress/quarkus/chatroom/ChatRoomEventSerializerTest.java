@@ -0,0 +1,93 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.NotSerializableException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class ChatRoomEventSerializerTest {
+
+    final ChatRoomEventSerializer serializer = new ChatRoomEventSerializer();
+
+    @Test
+    public void testRoundTrip() throws NotSerializableException {
+        List<Object> events = List.of(
+                new JoinRoomBroadcastEvent("lobby", "meteor"),
+                new LeaveRoomBroadcastEvent("lobby", "meteor"),
+                new JoinRoomEvent("meteor"),
+                new LeaveRoomEvent("meteor"),
+                new TextRequestEvent("meteor", "hello 流星", 1700000000000L),
+                new RoomMemberEvent("lobby", "10.0.0.1:2551", "meteor", 1),
+                new RoomMemberEvent("lobby", "10.0.0.1:2551", "meteor", -3),
+                new RoomSnapshot("lobby", Map.of("10.0.0.1:2551/meteor", 2, "10.0.0.2:2551/comet", 1), List.of()),
+                new RoomSnapshot("lobby", Map.of(), List.of()),
+                new RoomSnapshot("lobby", Map.of("10.0.0.1:2551/meteor", 1), List.of(new TextRequestEvent("meteor", "hello", 1700000000000L))),
+                new RoomHistoryQueryEvent("lobby"),
+                new RoomHistoryEvent("lobby", List.of()),
+                new RoomHistoryEvent("lobby", List.of(new TextRequestEvent("meteor", "a", 1), new TextRequestEvent("comet", "b", 2)))
+        );
+        for (Object event : events) Assertions.assertEquals(event, roundTrip(event));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws NotSerializableException {
+        byte[] payload = {0, 1, -1, 127, -128};
+
+        BinaryRequestEvent request = (BinaryRequestEvent) roundTrip(new BinaryRequestEvent("meteor", payload, 1700000000000L));
+        Assertions.assertEquals("meteor", request.nickname());
+        Assertions.assertArrayEquals(payload, request.message());
+        Assertions.assertEquals(1700000000000L, request.timestamp());
+    }
+
+    @Test
+    public void testHistoryKeepsOrderAndKind() throws NotSerializableException {
+        byte[] payload = {1, 2, 3};
+        RoomHistoryEvent history = (RoomHistoryEvent) roundTrip(new RoomHistoryEvent("lobby", List.of(
+                new TextRequestEvent("meteor", "a", 1),
+                new BinaryRequestEvent("comet", payload, 2),
+                new TextRequestEvent("meteor", "b", 3)
+        )));
+        Assertions.assertEquals(3, history.messages().size());
+        Assertions.assertEquals(new TextRequestEvent("meteor", "a", 1), history.messages().get(0));
+        BinaryRequestEvent binary = (BinaryRequestEvent) history.messages().get(1);
+        Assertions.assertEquals("comet", binary.nickname());
+        Assertions.assertArrayEquals(payload, binary.message());
+        Assertions.assertEquals(new TextRequestEvent("meteor", "b", 3), history.messages().get(2));
+    }
+
+    @Test
+    public void testManifests() {
+        Set<String> manifests = new HashSet<>(List.of(
+                serializer.manifest(new JoinRoomBroadcastEvent("lobby", "meteor")),
+                serializer.manifest(new LeaveRoomBroadcastEvent("lobby", "meteor")),
+                serializer.manifest(new JoinRoomEvent("meteor")),
+                serializer.manifest(new LeaveRoomEvent("meteor")),
+                serializer.manifest(new TextRequestEvent("meteor", "", 0)),
+                serializer.manifest(new BinaryRequestEvent("meteor", new byte[0], 0)),
+                serializer.manifest(new RoomMemberEvent("lobby", "", "meteor", 1)),
+                serializer.manifest(new RoomSnapshot("lobby", Map.of(), List.of())),
+                serializer.manifest(new RoomHistoryQueryEvent("lobby")),
+                serializer.manifest(new RoomHistoryEvent("lobby", List.of()))
+        ));
+        Assertions.assertEquals(10, manifests.size());
+    }
+
+    @Test
+    public void testUnknown() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> serializer.manifest(new BatchFlushEvent()));
+        Assertions.assertThrows(NotSerializableException.class, () -> serializer.fromBinary(new byte[0], "X"));
+
+        // the removed message broadcasts are rejected, not decoded as something else
+        Assertions.assertThrows(NotSerializableException.class, () -> serializer.fromBinary(new byte[0], "TB"));
+        Assertions.assertThrows(NotSerializableException.class, () -> serializer.fromBinary(new byte[0], "BB"));
+    }
+
+    Object roundTrip(Object event) throws NotSerializableException {
+        return serializer.fromBinary(serializer.toBinary(event), serializer.manifest(event));
+    }
+}
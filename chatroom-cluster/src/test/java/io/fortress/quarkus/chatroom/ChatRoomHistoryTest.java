@@ -0,0 +1,86 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.BinaryMessageEvent;
+import io.fortress.quarkus.chatroom.event.IResponseEvent;
+import io.fortress.quarkus.chatroom.event.TextResponseEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatRoomHistoryTest {
+
+    @Test
+    public void testEmpty() {
+        ChatRoomHistory history = new ChatRoomHistory(3);
+        Assertions.assertTrue(history.isEmpty());
+        Assertions.assertEquals(List.of(), messages(history));
+    }
+
+    @Test
+    public void testPartial() {
+        ChatRoomHistory history = new ChatRoomHistory(3);
+        history.add(TextResponseEvent.line("1"));
+        history.add(TextResponseEvent.line("2"));
+        Assertions.assertEquals(2, history.size());
+        Assertions.assertEquals(List.of("1", "2"), messages(history));
+    }
+
+    @Test
+    public void testWrapAround() {
+        ChatRoomHistory history = new ChatRoomHistory(3);
+        for (int i = 1; i <= 7; i++) {
+            history.add(TextResponseEvent.line(String.valueOf(i)));
+            Assertions.assertEquals(Math.min(i, 3), history.size());
+        }
+
+        // the oldest frames are overwritten, replay stays oldest first
+        Assertions.assertEquals(List.of("5", "6", "7"), messages(history));
+    }
+
+    @Test
+    public void testSharedFrames() {
+        ChatRoomHistory history = new ChatRoomHistory(2);
+        TextResponseEvent frame = TextResponseEvent.line("hello");
+        history.add(frame);
+        List<IResponseEvent> frames = new ArrayList<>();
+        history.forEach(frames::add);
+        Assertions.assertSame(frame, frames.get(0));
+    }
+
+    @Test
+    public void testReplay() {
+        ChatRoomHistory history = new ChatRoomHistory(3);
+        history.add(TextResponseEvent.line("1"));
+        history.add(TextResponseEvent.line("2"));
+        List<IResponseEvent> frames = new ArrayList<>();
+        history.replay(false, frames::add);
+        Assertions.assertEquals(List.of(TextResponseEvent.line("1"), TextResponseEvent.line("2")), frames);
+    }
+
+    @Test
+    public void testReplayBatched() {
+        ChatRoomHistory history = new ChatRoomHistory(4);
+        BinaryMessageEvent binary = new BinaryMessageEvent("lobby", "meteor", new byte[]{1});
+        history.add(TextResponseEvent.line("[lobby] a: 1"));
+        history.add(TextResponseEvent.line("[lobby] b: \"2\""));
+        history.add(binary);
+        history.add(TextResponseEvent.line("[lobby] c: 3"));
+
+        // the same JSON array frames as live batches, binary frames keep their position
+        List<IResponseEvent> frames = new ArrayList<>();
+        history.replay(true, frames::add);
+        Assertions.assertEquals(List.of(
+                new TextResponseEvent("[\"[lobby] a: 1\",\"[lobby] b: \\\"2\\\"\"]"),
+                binary,
+                new TextResponseEvent("[\"[lobby] c: 3\"]")
+        ), frames);
+    }
+
+    static List<String> messages(ChatRoomHistory history) {
+        List<String> messages = new ArrayList<>();
+        history.forEach(frame -> messages.add(((TextResponseEvent) frame).message()));
+        return messages;
+    }
+}
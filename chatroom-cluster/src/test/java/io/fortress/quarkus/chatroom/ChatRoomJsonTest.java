@@ -0,0 +1,47 @@
+package io.fortress.quarkus.chatroom;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ChatRoomJsonTest {
+
+    @Test
+    public void testQuote() {
+        Assertions.assertEquals("\"hello\"", quote("hello"));
+        Assertions.assertEquals("\"\"", quote(""));
+        Assertions.assertEquals("\"say \\\"hi\\\"\"", quote("say \"hi\""));
+        Assertions.assertEquals("\"C:\\\\chat\"", quote("C:\\chat"));
+        Assertions.assertEquals("\"a\\nb\\rc\\td\"", quote("a\nb\rc\td"));
+    }
+
+    @Test
+    public void testControlCharacters() {
+        Assertions.assertEquals("\"\\u0000\\u0001\\u001f\"", quote("\u0000\u0001\u001f"));
+    }
+
+    @Test
+    public void testUnicodeUnescaped() {
+        Assertions.assertEquals("\"流星 😀\"", quote("流星 😀"));
+    }
+
+    @Test
+    public void testBatch() {
+        ChatRoomBatch batch = new ChatRoomBatch(3);
+        Assertions.assertTrue(batch.isEmpty());
+        Assertions.assertFalse(batch.add("[lobby] a: hi"));
+        Assertions.assertFalse(batch.add("[lobby] b: \"quoted\"\n"));
+        Assertions.assertTrue(batch.add("[lobby] c: \\"));
+        Assertions.assertEquals("[\"[lobby] a: hi\",\"[lobby] b: \\\"quoted\\\"\\n\",\"[lobby] c: \\\\\"]", batch.drain());
+
+        // drained batches start over
+        Assertions.assertTrue(batch.isEmpty());
+        batch.add("x");
+        Assertions.assertEquals("[\"x\"]", batch.drain());
+    }
+
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder();
+        ChatRoomJson.quote(builder, value);
+        return builder.toString();
+    }
+}
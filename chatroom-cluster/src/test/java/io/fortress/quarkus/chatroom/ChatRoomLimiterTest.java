@@ -0,0 +1,89 @@
+package io.fortress.quarkus.chatroom;
+
+import io.quarkus.runtime.configuration.DurationConverter;
+import io.smallrye.config.PropertiesConfigSource;
+import io.smallrye.config.SmallRyeConfigBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+class ChatRoomLimiterTest {
+
+    @Test
+    public void testSessionLimit() {
+        ChatRoomLimiter limiter = limiter(1, 2, 0, 0, ChatRoomLimiter.Action.DROP);
+        limiter.open("a", "lobby");
+        Assertions.assertEquals(0, limiter.acquire("a", "lobby"));
+        Assertions.assertEquals(0, limiter.acquire("a", "lobby"));
+        Assertions.assertEquals(ChatRoomLimiter.SESSION, limiter.acquire("a", "lobby"));
+
+        // every session has its own bucket
+        limiter.open("b", "lobby");
+        Assertions.assertEquals(0, limiter.acquire("b", "lobby"));
+    }
+
+    @Test
+    public void testRoomLimitRefundsSession() {
+        ChatRoomLimiter limiter = limiter(1, 2, 1, 1, ChatRoomLimiter.Action.DROP);
+        limiter.open("a", "lobby");
+        Assertions.assertEquals(0, limiter.acquire("a", "lobby"));
+        Assertions.assertEquals(ChatRoomLimiter.ROOM, limiter.acquire("a", "lobby"));
+
+        // the frame dropped by the room did not use the session token
+        TokenBucket session = limiter.sessions.get("a");
+        Assertions.assertEquals(0, session.acquire(System.nanoTime(), 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, session.acquire(System.nanoTime(), 0));
+    }
+
+    @Test
+    public void testDelay() {
+        ChatRoomLimiter limiter = limiter(1, 1, 0, 0, ChatRoomLimiter.Action.DELAY);
+        limiter.open("a", "lobby");
+        Assertions.assertEquals(0, limiter.acquire("a", "lobby"));
+        long wait = limiter.acquire("a", "lobby");
+        Assertions.assertTrue(wait > 0 && wait <= Duration.ofSeconds(1).toNanos());
+
+        // the next frame would wait beyond max-delay
+        Assertions.assertEquals(ChatRoomLimiter.SESSION, limiter.acquire("a", "lobby"));
+    }
+
+    @Test
+    public void testRoomRemovedWithLastMember() {
+        ChatRoomLimiter limiter = limiter(0, 0, 10, 10, ChatRoomLimiter.Action.DROP);
+        limiter.open("a", "lobby");
+        limiter.open("b", "lobby");
+        limiter.close("a", "lobby");
+        Assertions.assertTrue(limiter.rooms.containsKey("lobby"));
+        limiter.close("b", "lobby");
+        Assertions.assertFalse(limiter.rooms.containsKey("lobby"));
+        Assertions.assertTrue(limiter.sessions.isEmpty());
+    }
+
+    @Test
+    public void testDisabled() {
+        ChatRoomLimiter limiter = limiter(0, 0, 0, 0, ChatRoomLimiter.Action.DROP);
+        limiter.open("a", "lobby");
+        for (int i = 0; i < 1000; i++) Assertions.assertEquals(0, limiter.acquire("a", "lobby"));
+    }
+
+    static ChatRoomLimiter limiter(int sessionRate, int sessionBurst, int roomRate, int roomBurst, ChatRoomLimiter.Action action) {
+        Map<String, String> properties = Map.of(
+                "chatroom.limit.session.rate", String.valueOf(sessionRate),
+                "chatroom.limit.session.burst", String.valueOf(sessionBurst),
+                "chatroom.limit.room.rate", String.valueOf(roomRate),
+                "chatroom.limit.room.burst", String.valueOf(roomBurst),
+                "chatroom.limit.action", action.name().toLowerCase(),
+                "chatroom.limit.max-delay", "1500ms"
+        );
+
+        // the real mapping with its defaults, only the limit keys are set
+        return new ChatRoomLimiter(new SmallRyeConfigBuilder()
+                .withMapping(ChatRoomClusterConfig.class)
+                .withConverter(Duration.class, 100, new DurationConverter())
+                .withSources(new PropertiesConfigSource(properties, "test", 100))
+                .build()
+                .getConfigMapping(ChatRoomClusterConfig.class));
+    }
+}
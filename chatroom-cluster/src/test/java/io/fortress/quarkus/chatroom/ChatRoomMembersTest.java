@@ -0,0 +1,92 @@
+package io.fortress.quarkus.chatroom;
+
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Props;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+class ChatRoomMembersTest {
+
+    static ActorSystem system;
+    static ActorRef first;
+    static ActorRef second;
+    static ActorRef third;
+
+    @BeforeAll
+    public static void setup() {
+        system = ActorSystem.create("ChatRoomMembersTest");
+        first = system.actorOf(Props.empty(), "session-1");
+        second = system.actorOf(Props.empty(), "session-2");
+        third = system.actorOf(Props.empty(), "session-3");
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        system.terminate();
+    }
+
+    @Test
+    public void testAddAndRemove() {
+        ChatRoomMembers members = new ChatRoomMembers();
+        Assertions.assertTrue(members.isEmpty());
+        Assertions.assertTrue(members.add(first, "meteor"));
+        Assertions.assertFalse(members.add(first, "meteor"));
+        Assertions.assertTrue(members.contains(first));
+        Assertions.assertEquals(1, members.size());
+
+        ChatRoomMembers.Member member = members.get(first);
+        Assertions.assertEquals("meteor", member.nickname());
+        Assertions.assertEquals("session-1", member.connectionId());
+
+        Assertions.assertSame(member, members.remove(first));
+        Assertions.assertNull(members.remove(first));
+        Assertions.assertFalse(members.contains(first));
+        Assertions.assertTrue(members.isEmpty());
+    }
+
+    @Test
+    public void testNicknameIndex() {
+        ChatRoomMembers members = new ChatRoomMembers();
+        members.add(first, "meteor");
+        members.add(second, "meteor");
+        members.add(third, "comet");
+
+        // one nickname can hold several connections, it goes offline with the last one
+        Assertions.assertEquals(Set.of(first, second), members.byNickname("meteor"));
+        members.remove(first);
+        Assertions.assertTrue(members.isOnline("meteor"));
+        members.remove(second);
+        Assertions.assertFalse(members.isOnline("meteor"));
+        Assertions.assertTrue(members.byNickname("meteor").isEmpty());
+        Assertions.assertTrue(members.isOnline("comet"));
+    }
+
+    @Test
+    public void testJoinOrder() {
+        ChatRoomMembers members = new ChatRoomMembers();
+        members.add(third, "comet");
+        members.add(first, "meteor");
+        members.add(second, "star");
+        members.remove(first);
+        members.add(first, "meteor");
+
+        List<ActorRef> order = new ArrayList<>();
+        members.forEach(order::add);
+        Assertions.assertEquals(List.of(third, second, first), order);
+    }
+
+    @Test
+    public void testReadOnlyViews() {
+        ChatRoomMembers members = new ChatRoomMembers();
+        members.add(first, "meteor");
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> members.byNickname("meteor").clear());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> members.members().clear());
+    }
+}
@@ -0,0 +1,137 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.IResponseEvent;
+import io.fortress.quarkus.chatroom.event.SendCompletedEvent;
+import io.fortress.quarkus.chatroom.event.TextResponseEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.websockets.next.CloseReason;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.smallrye.mutiny.Uni;
+import org.apache.pekko.actor.ActorRef;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatRoomOutboundTest {
+
+    static final ChatRoomMetrics metrics = new ChatRoomMetrics(new SimpleMeterRegistry(), new SessionRegistry());
+
+    /**
+     * 写出的文本帧, 写入一直不完成, 由测试调用 completed
+     */
+    final List<String> sent = new ArrayList<>();
+    final List<CloseReason> closed = new ArrayList<>();
+    WebSocketConnection connection;
+
+    @BeforeEach
+    public void setup() {
+        sent.clear();
+        closed.clear();
+        connection = (WebSocketConnection) Proxy.newProxyInstance(WebSocketConnection.class.getClassLoader(), new Class<?>[]{WebSocketConnection.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "isOpen" -> closed.isEmpty();
+            case "sendText" -> {
+                sent.add((String) args[0]);
+                yield Uni.createFrom().nothing();
+            }
+            case "close" -> {
+                closed.add((CloseReason) args[0]);
+                yield Uni.createFrom().voidItem();
+            }
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @Test
+    public void testInFlight() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.DROP_OLDEST);
+        send(outbound, "a", "b", "c");
+        Assertions.assertEquals(List.of("a"), sent);
+        Assertions.assertEquals(1, outbound.inFlight());
+        Assertions.assertEquals(2, outbound.pending());
+
+        // every completion writes the next queued frame
+        outbound.completed(new SendCompletedEvent(null));
+        Assertions.assertEquals(List.of("a", "b"), sent);
+        outbound.completed(new SendCompletedEvent(null));
+        Assertions.assertEquals(List.of("a", "b", "c"), sent);
+        Assertions.assertEquals(0, outbound.pending());
+        Assertions.assertEquals(2, outbound.highWaterMark());
+    }
+
+    @Test
+    public void testDropOldest() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.DROP_OLDEST);
+        long dropped = ChatRoomOutbound.dropped();
+        send(outbound, "a", "b", "c", "d");
+        Assertions.assertEquals(List.of("c", "d"), pending(outbound));
+        Assertions.assertEquals(dropped + 1, ChatRoomOutbound.dropped());
+    }
+
+    @Test
+    public void testDropNewest() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.DROP_NEWEST);
+        long dropped = ChatRoomOutbound.dropped();
+        send(outbound, "a", "b", "c", "d");
+        Assertions.assertEquals(List.of("b", "c"), pending(outbound));
+        Assertions.assertEquals(dropped + 1, ChatRoomOutbound.dropped());
+    }
+
+    @Test
+    public void testCoalesce() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.COALESCE);
+        send(outbound, "a", "b", "c", "d");
+        Assertions.assertEquals(List.of("b", "c\nd"), pending(outbound));
+
+        // frames that are not chat lines are never joined, the oldest frame is dropped instead
+        outbound.send(new TextResponseEvent("{\"type\":\"who\"}"));
+        Assertions.assertEquals(List.of("c\nd", "{\"type\":\"who\"}"), pending(outbound));
+        send(outbound, "e");
+        Assertions.assertEquals(List.of("{\"type\":\"who\"}", "e"), pending(outbound));
+    }
+
+    @Test
+    public void testDisconnect() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.DISCONNECT);
+        long disconnected = ChatRoomOutbound.disconnected();
+        send(outbound, "a", "b", "c", "d");
+        Assertions.assertEquals(List.of(ChatRoomOutbound.SLOW_CONSUMER), closed);
+        Assertions.assertEquals(0, outbound.pending());
+        Assertions.assertEquals(disconnected + 1, ChatRoomOutbound.disconnected());
+
+        // a closing session accepts nothing more
+        send(outbound, "e");
+        Assertions.assertEquals(0, outbound.pending());
+        Assertions.assertEquals(List.of("a"), sent);
+    }
+
+    @Test
+    public void testClearResetsQueued() {
+        ChatRoomOutbound outbound = outbound(ChatRoomOutbound.OverflowPolicy.DROP_OLDEST);
+        long queued = ChatRoomOutbound.queued();
+        send(outbound, "a", "b", "c");
+        Assertions.assertEquals(queued + 2, ChatRoomOutbound.queued());
+        outbound.clear();
+        Assertions.assertEquals(queued, ChatRoomOutbound.queued());
+    }
+
+    /**
+     * 最多一个在途写入, 队列容量 2
+     */
+    ChatRoomOutbound outbound(ChatRoomOutbound.OverflowPolicy policy) {
+        return new ChatRoomOutbound(connection, ActorRef.noSender(), Runnable::run, 1, 2, policy, metrics);
+    }
+
+    static void send(ChatRoomOutbound outbound, String... lines) {
+        for (String line : lines) outbound.send(TextResponseEvent.line(line));
+    }
+
+    static List<String> pending(ChatRoomOutbound outbound) {
+        List<String> messages = new ArrayList<>();
+        for (IResponseEvent event : outbound.pending) messages.add(((TextResponseEvent) event).message());
+        return messages;
+    }
+}
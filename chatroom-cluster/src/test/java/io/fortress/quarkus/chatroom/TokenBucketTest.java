@@ -0,0 +1,60 @@
+package io.fortress.quarkus.chatroom;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+    static final long SECOND = 1_000_000_000L;
+
+    /**
+     * 起始时间, 避开 0 附近
+     */
+    static final long NOW = 100 * SECOND;
+
+    @Test
+    public void testBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        for (int i = 0; i < 3; i++) Assertions.assertEquals(0, bucket.acquire(NOW, 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW, 0));
+    }
+
+    @Test
+    public void testRefill() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        Assertions.assertEquals(0, bucket.acquire(NOW, 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW + SECOND / 20, 0));
+
+        // one token every 100ms, the rejected attempt did not consume one
+        Assertions.assertEquals(0, bucket.acquire(NOW + SECOND / 10, 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW + SECOND / 10, 0));
+    }
+
+    @Test
+    public void testMaxWait() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        Assertions.assertEquals(0, bucket.acquire(NOW, SECOND));
+        Assertions.assertEquals(SECOND / 10, bucket.acquire(NOW, SECOND));
+        Assertions.assertEquals(2 * SECOND / 10, bucket.acquire(NOW, SECOND));
+
+        // waits beyond maxWait are rejected
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW, SECOND / 10));
+    }
+
+    @Test
+    public void testRelease() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        Assertions.assertEquals(0, bucket.acquire(NOW, 0));
+        Assertions.assertEquals(0, bucket.acquire(NOW, 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW, 0));
+
+        bucket.release();
+        Assertions.assertEquals(0, bucket.acquire(NOW, 0));
+        Assertions.assertEquals(TokenBucket.REJECTED, bucket.acquire(NOW, 0));
+    }
+
+    @Test
+    public void testInvalidRate() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
@@ -0,0 +1,72 @@
+package io.fortress.quarkus.chatroom.event;
+
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class BinaryMessageEventTest {
+
+    @Test
+    public void testCompactLayout() {
+        byte[] name = "流星".getBytes(StandardCharsets.UTF_8);
+        byte[] frame = new BinaryMessageEvent("lobby", "流星", new byte[]{1, 2, 3}).compact().message().getBytes();
+
+        Assertions.assertEquals(3 + name.length + 3, frame.length);
+        Assertions.assertEquals(BinaryMessageEvent.COMPACT_BINARY, frame[0]);
+        Assertions.assertEquals(0, frame[1]);
+        Assertions.assertEquals(name.length, frame[2]);
+        for (int i = 0; i < name.length; i++) Assertions.assertEquals(name[i], frame[3 + i]);
+        Assertions.assertEquals(1, frame[3 + name.length]);
+        Assertions.assertEquals(3, frame[frame.length - 1]);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] payload = new byte[1024];
+        for (int i = 0; i < payload.length; i++) payload[i] = (byte) i;
+        BinaryMessageEvent event = new BinaryMessageEvent("lobby", "meteor", payload);
+
+        BinaryMessageEvent decoded = BinaryMessageEvent.fromCompact("lobby", event.compact().message().getBytes());
+        Assertions.assertEquals("meteor", decoded.nickname());
+        Assertions.assertArrayEquals(payload, decoded.payload());
+    }
+
+    @Test
+    public void testEmptyPayloadAndLongNickname() {
+        String nickname = "n".repeat(300);
+        BinaryMessageEvent event = new BinaryMessageEvent("lobby", nickname, new byte[0]);
+
+        // the nickname length is an unsigned short, not a single byte
+        BinaryMessageEvent decoded = BinaryMessageEvent.fromCompact("lobby", event.compact().message().getBytes());
+        Assertions.assertEquals(nickname, decoded.nickname());
+        Assertions.assertEquals(0, decoded.payload().length);
+    }
+
+    @Test
+    public void testMalformedFrame() {
+        // too short for the header
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryMessageEvent.fromCompact("lobby", new byte[0]));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryMessageEvent.fromCompact("lobby", new byte[]{BinaryMessageEvent.COMPACT_BINARY, 0}));
+
+        // nickname length beyond the frame
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryMessageEvent.fromCompact("lobby", new byte[]{BinaryMessageEvent.COMPACT_BINARY, 0, 2, 'a'}));
+
+        // unknown type byte
+        Assertions.assertThrows(IllegalArgumentException.class, () -> BinaryMessageEvent.fromCompact("lobby", new byte[]{0x7F, 0, 1, 'a'}));
+
+        // header only: empty nickname, empty payload
+        BinaryMessageEvent decoded = BinaryMessageEvent.fromCompact("lobby", new byte[]{BinaryMessageEvent.COMPACT_BINARY, 0, 0});
+        Assertions.assertEquals("", decoded.nickname());
+        Assertions.assertEquals(0, decoded.payload().length);
+    }
+
+    @Test
+    public void testEncodedOnce() {
+        BinaryMessageEvent event = new BinaryMessageEvent("lobby", "meteor", new byte[]{1, 2, 3});
+        Assertions.assertSame(event.compact(), event.compact());
+        Assertions.assertSame(event.legacy(), event.legacy());
+        Assertions.assertEquals(Buffer.buffer("[lobby] meteor: [1, 2, 3]"), event.legacy().message());
+    }
+}
@@ -1,95 +1,217 @@
-package io.fortress.quarkus.chatroom;
-
-import io.fortress.quarkus.chatroom.event.*;
-import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
-import io.quarkus.runtime.Startup;
-import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.enterprise.inject.Default;
-import jakarta.enterprise.inject.Produces;
-import org.apache.pekko.actor.AbstractActor;
-import org.apache.pekko.actor.ActorRef;
-import org.apache.pekko.event.LoggingAdapter;
-
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
-@ApplicationScoped
-public class ChatRoomBootstrap {
-
-    public class Bootstrap {
-
-        public String getName() {
-            return name;
-        }
-
-        public ActorRef getAddress() {
-            return address;
-        }
-
-        private final String name;
-        private final ActorRef address;
-
-        public Bootstrap(String name, ActorRef address) {
-            this.name = name;
-            this.address = address;
-        }
-    }
-
-
-    @Startup
-    @Default
-    @Produces
-    @ApplicationScoped
-    public Bootstrap createBootstrap(ActorContainer container) {
-        String name = container.system().name();
-        ActorRef address = container.actorOf(name, ChatRoomDisposer.class, () -> new ChatRoomDisposer(name));
-        return new Bootstrap(name, address);
-    }
-
-
-    public static class ChatRoomDisposer extends AbstractActor {
-
-        final String name;
-        final List<ActorRef> actors = new ArrayList<>();
-        final LoggingAdapter log = context().system().log();
-
-        public ChatRoomDisposer(String name) {
-            this.name = name;
-        }
-
-        @Override
-        public Receive createReceive() {
-            return receiveBuilder()
-                    .match(JoinRoomEvent.class, (event) -> {
-                        String recv = "[%s] %s - join room".formatted(name, event.nickname());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                        ActorRef sender = getSender();
-                        actors.add(sender);
-                        log.info("Join Room: {}", sender.path());
-                    })
-                    .match(LeaveRoomEvent.class, (event) -> {
-                        ActorRef sender = getSender();
-                        actors.remove(sender);
-                        log.info("Leave Room: {}", sender.path());
-
-                        String recv = "[%s] %s - leave room".formatted(name, event.nickname());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                    })
-                    .match(TextRequestEvent.class, (event) -> {
-                        ActorRef sender = getSender();
-                        log.info("Forward TextMessage By {}, Total: {}", sender.path(), actors.size());
-                        String recv = "[%s] %s: %s".formatted(name, event.nickname(), event.message());
-                        actors.forEach(actor -> actor.tell(new TextResponseEvent(recv), ActorRef.noSender()));
-                    })
-                    .match(BinaryRequestEvent.class, (event) -> {
-                        ActorRef sender = getSender();
-                        log.info("Forward BinaryMessage By {}, Total: {}", sender.path(), actors.size());
-                        String recv = "[%s] %s: %s".formatted(name, event.nickname(), Arrays.toString(event.message()));
-                        actors.forEach(actor -> actor.tell(new BinaryResponseEvent(recv.getBytes(StandardCharsets.UTF_8)), ActorRef.noSender()));
-                    })
-                    .build();
-        }
-    }
-}
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.runtime.Startup;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Default;
+import jakarta.enterprise.inject.Produces;
+import org.apache.pekko.actor.AbstractActorWithTimers;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.event.LoggingAdapter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+@ApplicationScoped
+public class ChatRoomBootstrap {
+
+    public class Bootstrap {
+
+        public String getName() {
+            return name;
+        }
+
+        public ActorRef getAddress() {
+            return address;
+        }
+
+        private final String name;
+        private final ActorRef address;
+
+        public Bootstrap(String name, ActorRef address) {
+            this.name = name;
+            this.address = address;
+        }
+    }
+
+
+    @Startup
+    @Default
+    @Produces
+    @ApplicationScoped
+    public Bootstrap createBootstrap(ActorContainer container, ChatRoomConfig config) {
+        String name = container.system().name();
+        ChatRoomConfig.Room room = config.room();
+
+        // sessions pick the dispatcher up through the /user/session-* deployment, a typo fails here instead of on the first connection
+        String dispatcher = config.session().dispatcher();
+        if (!container.system().dispatchers().hasDispatcher(dispatcher)) {
+            throw new IllegalStateException("Unknown chatroom.session.dispatcher: " + dispatcher);
+        }
+        ActorRef address = container.actorOf(name, ChatRoomDisposer.class, () -> new ChatRoomDisposer(name, room));
+        return new Bootstrap(name, address);
+    }
+
+
+    public static class ChatRoomDisposer extends AbstractActorWithTimers {
+
+        static final String FLUSH = "flush";
+        static final String LOG_FLUSH = "log-flush";
+
+        final String name;
+        final ChatRoomMembers actors = new ChatRoomMembers();
+        final LoggingAdapter log = context().system().log();
+        final Duration window;
+        final ChatRoomBatch batch;
+        final ChatRoomHistory history;
+        final ChatRoomConfig.Log journalConfig;
+        ChatRoomLog journal;
+
+        public ChatRoomDisposer(String name, ChatRoomConfig.Room room) {
+            this.name = name;
+            this.journalConfig = room.log();
+            this.window = room.batch().window();
+            this.batch = room.batch().enabled() ? new ChatRoomBatch(room.batch().maxMessages()) : null;
+            this.history = room.history().size() > 0 ? new ChatRoomHistory(room.history().size()) : null;
+        }
+
+        @Override
+        public void preStart() throws IOException {
+            if (!journalConfig.enabled()) return;
+            journal = new ChatRoomLog(
+                    Path.of(journalConfig.directory(), name),
+                    journalConfig.segmentSize(),
+                    journalConfig.indexInterval(),
+                    journalConfig.maxSegments(),
+                    journalConfig.maxBytes()
+            );
+            log.info("Open room log: {}, next offset: {}", name, journal.nextOffset());
+
+            // warm the in-memory history from the tail of the log
+            if (Objects.isNull(history)) return;
+            journal.read(Math.max(0, journal.nextOffset() - history.capacity()), history.capacity(), record -> {
+                if (record.type() != ChatRoomLog.BINARY) {
+                    history.add(TextResponseEvent.line(new String(record.payload(), StandardCharsets.UTF_8)));
+                    return;
+                }
+
+                // a malformed record is skipped, the rest of the tail still warms the history
+                try {
+                    history.add(BinaryMessageEvent.fromCompact(name, record.payload()));
+                } catch (IllegalArgumentException e) {
+                    log.warning("Skip room log record: {}, offset: {}, {}", name, record.offset(), e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public void postStop() throws IOException {
+            if (!Objects.isNull(journal)) journal.close();
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(JoinRoomEvent.class, (event) -> {
+                        ActorRef sender = getSender();
+                        if (actors.contains(sender)) return;
+                        broadcast("[%s] %s - join room".formatted(name, event.nickname()), false);
+
+                        // the pending batch goes out before the member is added, the replay already covers it
+                        flush();
+                        actors.add(sender, event.nickname());
+                        replay(sender);
+                        log.info("Join Room: {}", sender.path());
+                    })
+                    .match(LeaveRoomEvent.class, (event) -> {
+                        ActorRef sender = getSender();
+                        if (Objects.isNull(actors.remove(sender))) return;
+                        log.info("Leave Room: {}", sender.path());
+
+                        broadcast("[%s] %s - leave room".formatted(name, event.nickname()), false);
+                    })
+                    .match(TextRequestEvent.class, (event) -> {
+                        if (log.isDebugEnabled()) log.debug("Forward TextMessage By {}, Total: {}", getSender().path(), actors.size());
+                        broadcast("[%s] %s: %s".formatted(name, event.nickname(), event.message()), true);
+                    })
+                    .match(BinaryRequestEvent.class, (event) -> {
+                        if (log.isDebugEnabled()) log.debug("Forward BinaryMessage By {}, Total: {}", getSender().path(), actors.size());
+                        flush();
+
+                        // encoded at most once per wire format, the same read-only frames are shared by every member
+                        BinaryMessageEvent response = new BinaryMessageEvent(name, event.nickname(), event.message());
+                        record(response);
+                        actors.forEach(actor -> actor.tell(response, ActorRef.noSender()));
+                    })
+                    .match(BatchFlushEvent.class, event -> flush())
+                    .match(LogFlushEvent.class, event -> journal.flush())
+                    .build();
+        }
+
+        /**
+         * 文本广播, 开启批处理时先进入批次; message 为 true 时写入消息历史
+         */
+        void broadcast(String recv, boolean message) {
+            if (Objects.isNull(batch)) {
+                TextResponseEvent response = TextResponseEvent.line(recv);
+                if (message) record(response);
+                actors.forEach(actor -> actor.tell(response, ActorRef.noSender()));
+                return;
+            }
+            if (message) record(TextResponseEvent.line(recv));
+            if (batch.isEmpty()) getTimers().startSingleTimer(FLUSH, new BatchFlushEvent(), window);
+            if (batch.add(recv)) flush();
+        }
+
+        /**
+         * 发送当前批次
+         */
+        void flush() {
+            if (Objects.isNull(batch) || batch.isEmpty()) return;
+            getTimers().cancel(FLUSH);
+            TextResponseEvent response = new TextResponseEvent(batch.drain());
+            actors.forEach(actor -> actor.tell(response, ActorRef.noSender()));
+        }
+
+        /**
+         * 聊天消息写入历史和日志
+         */
+        void record(IResponseEvent frame) {
+            if (!Objects.isNull(history)) history.add(frame);
+            if (Objects.isNull(journal)) return;
+            byte type = frame instanceof BinaryMessageEvent ? ChatRoomLog.BINARY : ChatRoomLog.TEXT;
+            byte[] payload = frame instanceof BinaryMessageEvent binary
+                    ? binary.compact().message().getBytes()
+                    : ((TextResponseEvent) frame).message().getBytes(StandardCharsets.UTF_8);
+
+            // an oversized record would throw and restart the disposer, dropping every member
+            if (!journal.fits(payload.length)) {
+                log.warning("Skip room log record of {} bytes, larger than a segment: {}", payload.length, name);
+                return;
+            }
+            try {
+                journal.append(type, System.currentTimeMillis(), payload);
+            } catch (IOException e) {
+                log.error(e, "Append room log failed: {}", name);
+                return;
+            }
+
+            // group commit: everything appended within the window is forced together
+            if (!getTimers().isTimerActive(LOG_FLUSH)) {
+                getTimers().startSingleTimer(LOG_FLUSH, new LogFlushEvent(), journalConfig.flushInterval());
+            }
+        }
+
+        /**
+         * 向新成员重放消息历史, 开启批处理时以批次帧重放
+         */
+        void replay(ActorRef member) {
+            if (Objects.isNull(history)) return;
+            history.replay(!Objects.isNull(batch), frame -> member.tell(frame, ActorRef.noSender()));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.fortress.quarkus.chatroom;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * 聊天室配置: chatroom.*
+ */
+@ConfigMapping(prefix = "chatroom")
+public interface ChatRoomConfig {
+
+    /**
+     * 会话配置
+     */
+    Session session();
+
+    /**
+     * 房间配置
+     */
+    Room room();
+
+    /**
+     * 心跳
+     */
+    Heartbeat heartbeat();
+
+    /**
+     * 帧采样追踪
+     */
+    Trace trace();
+
+    interface Session {
+
+        /**
+         * 单个会话同时在途的异步写入数量
+         */
+        @WithDefault("16")
+        int maxInFlight();
+
+        /**
+         * 发送队列
+         */
+        Outbound outbound();
+
+        /**
+         * 会话 Actor 的调度器, 通过 pekko.actor.deployment."/user/session-*" 生效:
+         * pekko.actor.default-dispatcher, session-blocking-dispatcher, session-virtual-dispatcher;
+         * 启动时校验调度器存在
+         */
+        @WithDefault("pekko.actor.default-dispatcher")
+        String dispatcher();
+    }
+
+    interface Outbound {
+
+        /**
+         * 单个会话排队等待写出的最大帧数量
+         */
+        @WithDefault("256")
+        int capacity();
+
+        /**
+         * 队列满时的处理策略: drop-oldest, drop-newest, coalesce, disconnect
+         */
+        @WithDefault("drop-oldest")
+        ChatRoomOutbound.OverflowPolicy policy();
+    }
+
+    interface Room {
+
+        /**
+         * 广播批处理
+         */
+        Batch batch();
+
+        /**
+         * 消息历史
+         */
+        History history();
+
+        /**
+         * 消息持久化日志
+         */
+        Log log();
+    }
+
+    interface Log {
+
+        /**
+         * 开启后聊天消息追加写入本地分段日志
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * 日志目录
+         */
+        @WithDefault("data/chatroom")
+        String directory();
+
+        /**
+         * 单个分段文件的大小(字节)
+         */
+        @WithDefault("67108864")
+        int segmentSize();
+
+        /**
+         * 稀疏索引的间隔(字节)
+         */
+        @WithDefault("4096")
+        int indexInterval();
+
+        /**
+         * 每个房间最多保留的分段数量, 0 表示不限
+         */
+        @WithDefault("16")
+        int maxSegments();
+
+        /**
+         * 每个房间最多保留的分段总大小(字节), 0 表示不限
+         */
+        @WithDefault("0")
+        long maxBytes();
+
+        /**
+         * group commit 窗口, 窗口内追加的记录一起落盘
+         */
+        @WithDefault("10ms")
+        Duration flushInterval();
+    }
+
+    interface History {
+
+        /**
+         * 每个房间保存的最近消息数量, 新成员加入时重放, 0 表示关闭
+         */
+        @WithDefault("50")
+        int size();
+    }
+
+    interface Batch {
+
+        /**
+         * 开启后文本消息按窗口合并为 JSON 字符串数组帧
+         */
+        @WithDefault("false")
+        boolean enabled();
+
+        /**
+         * 合并窗口
+         */
+        @WithDefault("20ms")
+        Duration window();
+
+        /**
+         * 单个批次的最大消息数量, 达到后立即发送
+         */
+        @WithDefault("32")
+        int maxMessages();
+    }
+
+    interface Trace {
+
+        /**
+         * 平均每 N 帧记录 1 帧, 0 表示关闭
+         */
+        @WithDefault("0")
+        int sampleRate();
+
+        /**
+         * 环形缓冲区保存的帧数量
+         */
+        @WithDefault("1024")
+        int capacity();
+
+        /**
+         * 帧内容预览长度
+         */
+        @WithDefault("64")
+        int preview();
+    }
+
+    interface Heartbeat {
+
+        /**
+         * 每个连接的心跳间隔
+         */
+        @WithDefault("30s")
+        Duration interval();
+
+        /**
+         * 超过该时间没有收到 pong 则关闭连接
+         */
+        @WithDefault("90s")
+        Duration idleTimeout();
+
+        /**
+         * 时间轮槽位数量, 心跳分散到 interval / slots 的刻度上
+         */
+        @WithDefault("32")
+        int slots();
+    }
+}
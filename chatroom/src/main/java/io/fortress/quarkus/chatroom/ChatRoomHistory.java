@@ -0,0 +1,74 @@
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.IResponseEvent;
+import io.fortress.quarkus.chatroom.event.TextResponseEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * 房间消息历史
+ * <p>
+ * 固定容量的环形缓冲区, 保存最近 capacity 条已编码的响应帧, 新成员加入时按时间顺序重放;
+ * 保存的是广播时创建的同一个只读帧, 写入和重放都不复制消息内容.
+ * 只能在所属 Actor 内部访问, 非线程安全.
+ */
+public final class ChatRoomHistory {
+
+    final IResponseEvent[] frames;
+    int next;
+    int size;
+
+    public ChatRoomHistory(int capacity) {
+        this.frames = new IResponseEvent[capacity];
+    }
+
+    /**
+     * 写入帧, 已满时覆盖最早的帧
+     */
+    public void add(IResponseEvent frame) {
+        frames[next] = frame;
+        next = (next + 1) % frames.length;
+        if (size < frames.length) size++;
+    }
+
+    /**
+     * 从旧到新遍历
+     */
+    public void forEach(Consumer<IResponseEvent> consumer) {
+        int start = (next - size + frames.length) % frames.length;
+        for (int i = 0; i < size; i++) consumer.accept(frames[(start + i) % frames.length]);
+    }
+
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * 从旧到新重放; batched 为 true 时连续的聊天文本合并为一个 {@link ChatRoomBatch} 帧, 和实时批次格式一致,
+     * 二进制帧按原位置单独发送
+     */
+    public void replay(boolean batched, Consumer<IResponseEvent> consumer) {
+        if (!batched) {
+            forEach(consumer);
+            return;
+        }
+        ChatRoomBatch batch = new ChatRoomBatch(size);
+        forEach(frame -> {
+            if (frame instanceof TextResponseEvent text && text.line()) {
+                batch.add(text.message());
+                return;
+            }
+            if (!batch.isEmpty()) consumer.accept(new TextResponseEvent(batch.drain()));
+            consumer.accept(frame);
+        });
+        if (!batch.isEmpty()) consumer.accept(new TextResponseEvent(batch.drain()));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
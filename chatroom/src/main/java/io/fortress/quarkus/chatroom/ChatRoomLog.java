@@ -0,0 +1,334 @@
+package io.fortress.quarkus.chatroom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 房间消息日志
+ * <p>
+ * 本地磁盘上只追加的分段日志, 每个分段是一个预分配并映射到内存的文件, 文件名为分段的起始序号:
+ * <pre>
+ * record = length(4) crc(4) offset(8) timestamp(8) type(1) payload(length)
+ * </pre>
+ * 追加只写入映射内存, 由调用方按时间窗口调用 {@link #flush()} 批量落盘(group commit);
+ * 每个分段每隔 indexInterval 字节记录一个稀疏索引, "从序号 X 开始读" 只需要从最近的索引点向后扫描.
+ * 启动时逐条校验 crc 恢复写入位置, 末尾未完整写入的记录被丢弃.
+ * 只有正在写入的分段保持映射, 写满的分段落盘后解除映射, 读取时临时映射;
+ * 分段数量或总大小超过 maxSegments / maxBytes 时删除最早的分段, 0 表示不限.
+ * 只能在所属 Actor 内部访问, 非线程安全.
+ */
+public final class ChatRoomLog implements Closeable {
+
+    /**
+     * 日志记录
+     */
+    public record Record(
+            long offset,
+            long timestamp,
+            byte type,
+            byte[] payload
+    ) {
+    }
+
+    public static final byte TEXT = 0;
+    public static final byte BINARY = 1;
+
+    static final int HEADER = 4 + 4 + 8 + 8 + 1;
+    static final String SUFFIX = ".log";
+
+    /**
+     * 立即解除映射, 不等 GC 回收; 运行时不支持时为 null
+     */
+    static final MethodHandle CLEANER = cleaner();
+
+    /**
+     * 日志分段
+     */
+    static final class Segment {
+        final long baseOffset;
+        final Path file;
+
+        /**
+         * 写满后为 null
+         */
+        FileChannel channel;
+        MappedByteBuffer buffer;
+        long[] indexOffsets = new long[64];
+        int[] indexPositions = new int[64];
+        int indexSize;
+        int lastIndexed;
+        int position;
+        long nextOffset;
+
+        Segment(long baseOffset, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.nextOffset = baseOffset;
+        }
+
+        void index(long offset, int position, int interval) {
+            if (indexSize > 0 && position - lastIndexed < interval) return;
+            if (indexSize == indexOffsets.length) {
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+                indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+            }
+            indexOffsets[indexSize] = offset;
+            indexPositions[indexSize] = position;
+            indexSize++;
+            lastIndexed = position;
+        }
+
+        /**
+         * 不大于 offset 的最近索引点的文件位置
+         */
+        int floor(long offset) {
+            int i = Arrays.binarySearch(indexOffsets, 0, indexSize, offset);
+            if (i >= 0) return indexPositions[i];
+            i = -i - 2;
+            return i < 0 ? 0 : indexPositions[i];
+        }
+    }
+
+    final Path directory;
+    final int segmentSize;
+    final int indexInterval;
+    final int maxSegments;
+    final long maxBytes;
+    final TreeMap<Long, Segment> segments = new TreeMap<>();
+    final CRC32C crc = new CRC32C();
+    Segment active;
+    boolean dirty;
+
+    public ChatRoomLog(Path directory, int segmentSize, int indexInterval) throws IOException {
+        this(directory, segmentSize, indexInterval, 0, 0);
+    }
+
+    public ChatRoomLog(Path directory, int segmentSize, int indexInterval, int maxSegments, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+        this.maxSegments = maxSegments;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Segment segment = open(file, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+            recover(segment);
+            if (!Objects.isNull(segments.lastEntry())) seal(segments.lastEntry().getValue());
+            segments.put(segment.baseOffset, segment);
+        }
+        this.active = segments.isEmpty() ? roll(0) : segments.lastEntry().getValue();
+        retain();
+    }
+
+    /**
+     * 记录是否能写入一个分段
+     */
+    public boolean fits(int payloadLength) {
+        return HEADER + (long) payloadLength <= segmentSize;
+    }
+
+    /**
+     * 追加一条记录, 返回记录序号
+     */
+    public long append(byte type, long timestamp, byte[] payload) throws IOException {
+        int size = HEADER + payload.length;
+        if (size > segmentSize) throw new IllegalArgumentException("Record exceeds segment size: " + size);
+        if (active.position + size > segmentSize) {
+            long next = active.nextOffset;
+            seal(active);
+            active = roll(next);
+            retain();
+        }
+
+        Segment segment = active;
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        long offset = segment.nextOffset;
+        buffer.putLong(position + 8, offset);
+        buffer.putLong(position + 16, timestamp);
+        buffer.put(position + 24, type);
+        buffer.put(position + HEADER, payload);
+        crc.reset();
+        crc.update(buffer.slice(position + 8, size - 8));
+        buffer.putInt(position + 4, (int) crc.getValue());
+
+        // length last: a torn record is never seen as complete on recovery
+        buffer.putInt(position, payload.length);
+
+        segment.index(offset, position, indexInterval);
+        segment.position += size;
+        segment.nextOffset++;
+        dirty = true;
+        return offset;
+    }
+
+    /**
+     * 落盘自上次调用以来追加的记录
+     */
+    public void flush() {
+        if (!dirty) return;
+        active.buffer.force();
+        dirty = false;
+    }
+
+    /**
+     * 从序号 from 开始按顺序读取最多 max 条记录
+     */
+    public void read(long from, int max, Consumer<Record> consumer) throws IOException {
+        Map.Entry<Long, Segment> floor = segments.floorEntry(from);
+        Long start = Objects.isNull(floor) ? segments.firstKey() : floor.getKey();
+        int count = 0;
+        for (Segment segment : segments.tailMap(start, true).values()) {
+            if (segment.position == 0) continue;
+            boolean sealed = Objects.isNull(segment.buffer);
+            MappedByteBuffer buffer = sealed ? map(segment) : segment.buffer;
+            try {
+                int position = from > segment.baseOffset ? segment.floor(from) : 0;
+                while (position < segment.position && count < max) {
+                    int length = buffer.getInt(position);
+                    long offset = buffer.getLong(position + 8);
+                    if (offset >= from) {
+                        byte[] payload = new byte[length];
+                        buffer.get(position + HEADER, payload);
+                        consumer.accept(new Record(offset, buffer.getLong(position + 16), buffer.get(position + 24), payload));
+                        count++;
+                    }
+                    position += HEADER + length;
+                }
+            } finally {
+                if (sealed) unmap(buffer);
+            }
+            if (count >= max) return;
+        }
+    }
+
+    /**
+     * 下一条记录的序号
+     */
+    public long nextOffset() {
+        return active.nextOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (Segment segment : segments.values()) release(segment);
+        segments.clear();
+    }
+
+    Segment open(Path file, long baseOffset) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new Segment(baseOffset, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    }
+
+    Segment roll(long baseOffset) throws IOException {
+        Segment segment = open(directory.resolve("%020d%s".formatted(baseOffset, SUFFIX)), baseOffset);
+        segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    /**
+     * 写满的分段落盘并解除映射
+     */
+    void seal(Segment segment) throws IOException {
+        if (Objects.isNull(segment.buffer)) return;
+        segment.buffer.force();
+        release(segment);
+    }
+
+    void release(Segment segment) throws IOException {
+        MappedByteBuffer buffer = segment.buffer;
+        segment.buffer = null;
+        if (!Objects.isNull(buffer)) unmap(buffer);
+        if (!Objects.isNull(segment.channel)) segment.channel.close();
+        segment.channel = null;
+    }
+
+    /**
+     * 只读映射已写满的分段
+     */
+    static MappedByteBuffer map(Segment segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.position);
+        }
+    }
+
+    /**
+     * 删除超出保留限制的最早分段, 正在写入的分段总是保留
+     */
+    void retain() throws IOException {
+        while (segments.size() > 1 && ((maxSegments > 0 && segments.size() > maxSegments) || (maxBytes > 0 && (long) segments.size() * segmentSize > maxBytes))) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            release(oldest);
+            Files.deleteIfExists(oldest.file);
+        }
+    }
+
+    static void unmap(MappedByteBuffer buffer) {
+        if (Objects.isNull(CLEANER)) return;
+        try {
+            CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable ignored) {
+            // left to the garbage collector
+        }
+    }
+
+    static MethodHandle cleaner() {
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(type, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 扫描分段, 重建索引并定位写入位置
+     */
+    void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + HEADER + length > segmentSize) break;
+            crc.reset();
+            crc.update(buffer.slice(position + 8, HEADER - 8 + length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) break;
+            long offset = buffer.getLong(position + 8);
+            if (offset != segment.nextOffset) break;
+            segment.index(offset, position, indexInterval);
+            position += HEADER + length;
+            segment.nextOffset++;
+        }
+        segment.position = position;
+    }
+}
@@ -0,0 +1,107 @@
+package io.fortress.quarkus.chatroom;
+
+import org.apache.pekko.actor.ActorRef;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 房间成员索引
+ * <p>
+ * 按 ActorRef 去重, add/remove/contains 均为 O(1), 按加入顺序遍历;
+ * 同时维护昵称索引, 在线查询不需要扫描全部成员.
+ * 只能在所属 Actor 内部访问, 非线程安全.
+ */
+public final class ChatRoomMembers {
+
+    /**
+     * 成员信息
+     *
+     * @param actor        会话 Actor
+     * @param nickname     昵称
+     * @param connectionId 连接ID, 即会话 Actor 名称
+     * @param joinedAt     加入时间戳(ms)
+     */
+    public record Member(
+            ActorRef actor,
+            String nickname,
+            String connectionId,
+            long joinedAt
+    ) {
+    }
+
+    private final Map<ActorRef, Member> members = new LinkedHashMap<>();
+
+    private final Map<String, Set<ActorRef>> nicknames = new HashMap<>();
+
+
+    /**
+     * 加入成员, 重复加入返回 false
+     */
+    public boolean add(ActorRef actor, String nickname) {
+        if (members.containsKey(actor)) return false;
+        members.put(actor, new Member(actor, nickname, actor.path().name(), System.currentTimeMillis()));
+        nicknames.computeIfAbsent(nickname, key -> new LinkedHashSet<>()).add(actor);
+        return true;
+    }
+
+    /**
+     * 移除成员, 不存在返回 null
+     */
+    public Member remove(ActorRef actor) {
+        Member member = members.remove(actor);
+        if (Objects.isNull(member)) return null;
+        Set<ActorRef> refs = nicknames.get(member.nickname());
+        if (!Objects.isNull(refs) && refs.remove(actor) && refs.isEmpty()) nicknames.remove(member.nickname());
+        return member;
+    }
+
+    public boolean contains(ActorRef actor) {
+        return members.containsKey(actor);
+    }
+
+    public Member get(ActorRef actor) {
+        return members.get(actor);
+    }
+
+    /**
+     * 昵称是否在线
+     */
+    public boolean isOnline(String nickname) {
+        return nicknames.containsKey(nickname);
+    }
+
+    /**
+     * 按昵称查询会话
+     */
+    public Set<ActorRef> byNickname(String nickname) {
+        Set<ActorRef> refs = nicknames.get(nickname);
+        return Objects.isNull(refs) ? Collections.emptySet() : Collections.unmodifiableSet(refs);
+    }
+
+    public Collection<Member> members() {
+        return Collections.unmodifiableCollection(members.values());
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * 按加入顺序遍历成员, 用于广播
+     */
+    public void forEach(Consumer<ActorRef> consumer) {
+        members.keySet().forEach(consumer);
+    }
+}
@@ -0,0 +1,28 @@
+package io.fortress.quarkus.chatroom;
+
+import io.quarkus.websockets.next.WebSocketConnection;
+
+/**
+ * 连接协议协商
+ * <p>
+ * 客户端在握手时通过 Sec-WebSocket-Protocol 提供 {@link #COMPACT}, 且服务端在
+ * quarkus.websockets-next.server.supported-subprotocols 中声明并选定该子协议时, 使用紧凑二进制帧;
+ * 没有协商成功的连接保持原有的文本渲染帧.
+ */
+public final class ChatRoomProtocol {
+
+    /**
+     * 紧凑二进制帧子协议
+     */
+    public static final String COMPACT = "chatroom.binary.v1";
+
+    private ChatRoomProtocol() {
+    }
+
+    /**
+     * 连接是否协商了紧凑二进制帧, 以握手最终选定的子协议为准, 而不是客户端提供的列表
+     */
+    public static boolean compact(WebSocketConnection connection) {
+        return COMPACT.equals(connection.subprotocol());
+    }
+}
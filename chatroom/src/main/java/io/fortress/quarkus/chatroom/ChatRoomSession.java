@@ -1,64 +1,71 @@
-package io.fortress.quarkus.chatroom;
-
-import io.fortress.quarkus.chatroom.event.*;
-import io.quarkus.websockets.next.WebSocketConnection;
-import io.vertx.core.buffer.Buffer;
-import jakarta.inject.Inject;
-import org.apache.pekko.actor.AbstractActor;
-import org.apache.pekko.actor.ActorRef;
-import org.apache.pekko.actor.Cancellable;
-import org.apache.pekko.actor.Scheduler;
-import org.apache.pekko.event.LoggingAdapter;
-
-import java.time.Duration;
-import java.util.Objects;
-
-
-public class ChatRoomSession extends AbstractActor {
-
-    @Inject
-    ChatRoomBootstrap.Bootstrap bootstrap;
-
-    final WebSocketConnection connection;
-    final Scheduler scheduler = context().system().scheduler();
-    final Cancellable heartbeat;
-    final LoggingAdapter log = context().system().log();
-
-
-    public ChatRoomSession(WebSocketConnection connection) {
-        this.connection = connection;
-        this.heartbeat = scheduler.scheduleAtFixedRate(
-                Duration.ofSeconds(30),
-                Duration.ofSeconds(30),
-                getSelf(),
-                new HeartbeatEvent(),
-                getContext().getDispatcher(),
-                ActorRef.noSender()
-        );
-    }
-
-    @Override
-    public void preStart() {
-        bootstrap.getAddress().tell(new JoinRoomEvent(connection.pathParam("nickname").trim()), getSelf());
-    }
-
-    @Override
-    public void postStop() {
-        if (!Objects.isNull(heartbeat)) heartbeat.cancel();
-        bootstrap.getAddress().tell(new LeaveRoomEvent(connection.pathParam("nickname").trim()), getSelf());
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(HeartbeatEvent.class, connection::isOpen, heartbeat -> connection.sendPingAndAwait(Buffer.buffer("Heartbeat")))
-                .match(DisconnectedEvent.class, (event) -> log.info("Disconnected Session: {}", event))
-                .match(TextRequestEvent.class, event -> bootstrap.getAddress().tell(event, getSelf()))
-                .match(BinaryRequestEvent.class, event -> bootstrap.getAddress().tell(event, getSelf()))
-                .match(TextResponseEvent.class, connection::isOpen, event -> connection.sendTextAndAwait(event.message()))
-                .match(BinaryResponseEvent.class, connection::isOpen, event -> connection.sendBinaryAndAwait(event.message()))
-                .build();
-    }
-
-
-}
+package io.fortress.quarkus.chatroom;
+
+import io.fortress.quarkus.chatroom.event.*;
+import io.quarkus.websockets.next.WebSocketConnection;
+import jakarta.inject.Inject;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.event.LoggingAdapter;
+
+import java.util.Objects;
+
+
+public class ChatRoomSession extends AbstractActor {
+
+    @Inject
+    ChatRoomBootstrap.Bootstrap bootstrap;
+
+    @Inject
+    ChatRoomConfig config;
+
+    final WebSocketConnection connection;
+
+    /**
+     * 是否协商了紧凑二进制帧
+     */
+    final boolean compact;
+    ChatRoomOutbound outbound;
+    final LoggingAdapter log = context().system().log();
+
+
+    public ChatRoomSession(WebSocketConnection connection) {
+        this.connection = connection;
+        this.compact = ChatRoomProtocol.compact(connection);
+    }
+
+    @Override
+    public void preStart() {
+        outbound = new ChatRoomOutbound(
+                connection,
+                getSelf(),
+                getContext().getDispatcher(),
+                config.session().maxInFlight(),
+                config.session().outbound().capacity(),
+                config.session().outbound().policy()
+        );
+        bootstrap.getAddress().tell(new JoinRoomEvent(connection.pathParam("nickname").trim()), getSelf());
+    }
+
+    @Override
+    public void postStop() {
+        if (!Objects.isNull(outbound)) outbound.clear();
+        bootstrap.getAddress().tell(new LeaveRoomEvent(connection.pathParam("nickname").trim()), getSelf());
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(DisconnectedEvent.class, (event) -> log.info("Disconnected Session: {}, Outbound High Water Mark: {}", event, outbound.highWaterMark()))
+                .match(TextRequestEvent.class, event -> bootstrap.getAddress().tell(event, getSelf()))
+                .match(BinaryRequestEvent.class, event -> bootstrap.getAddress().tell(event, getSelf()))
+                .match(TextResponseEvent.class, connection::isOpen, event -> outbound.send(event))
+                .match(BinaryResponseEvent.class, connection::isOpen, event -> outbound.send(event))
+                .match(BinaryMessageEvent.class, connection::isOpen, event -> outbound.send(compact ? event.compact() : event.legacy()))
+                .match(SendCompletedEvent.class, event -> {
+                    if (!Objects.isNull(event.failure())) log.warning("Send failed: {}", event.failure().getMessage());
+                    outbound.completed(event);
+                })
+                .build();
+    }
+
+
+}
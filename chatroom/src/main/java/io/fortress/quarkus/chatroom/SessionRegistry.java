@@ -0,0 +1,99 @@
+package io.fortress.quarkus.chatroom;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.pekko.actor.ActorRef;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线会话注册表
+ * <p>
+ * 连接建立时解析一次昵称/房间并保存, 之后每一帧只做一次 O(1) 查找;
+ * 支持按连接ID和昵称查询, 节点级统计使用 LongAdder 分段计数.
+ */
+@ApplicationScoped
+public class SessionRegistry {
+
+    /**
+     * 会话信息
+     *
+     * @param id       连接ID
+     * @param nickname 昵称, 没有时为 null
+     * @param room     房间, 没有时为 null
+     * @param actor    会话 Actor
+     */
+    public record Entry(
+            String id,
+            String nickname,
+            String room,
+            ActorRef actor
+    ) {
+    }
+
+    final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    final Map<String, Set<Entry>> nicknames = new ConcurrentHashMap<>();
+
+    /**
+     * 累计建立的连接数量
+     */
+    final LongAdder connected = new LongAdder();
+
+    /**
+     * 累计断开的连接数量
+     */
+    final LongAdder disconnected = new LongAdder();
+
+
+    public Entry register(String id, String nickname, String room, ActorRef actor) {
+        Entry entry = new Entry(id, nickname, room, actor);
+        sessions.put(id, entry);
+        if (!Objects.isNull(nickname)) nicknames.compute(nickname, (key, entries) -> {
+            Set<Entry> value = Objects.isNull(entries) ? ConcurrentHashMap.newKeySet() : entries;
+            value.add(entry);
+            return value;
+        });
+        connected.increment();
+        return entry;
+    }
+
+    public Entry unregister(String id) {
+        Entry entry = sessions.remove(id);
+        if (Objects.isNull(entry)) return null;
+        if (!Objects.isNull(entry.nickname())) nicknames.computeIfPresent(entry.nickname(), (key, entries) -> {
+            entries.remove(entry);
+            return entries.isEmpty() ? null : entries;
+        });
+        disconnected.increment();
+        return entry;
+    }
+
+    public Entry get(String id) {
+        return sessions.get(id);
+    }
+
+    public Set<Entry> byNickname(String nickname) {
+        Set<Entry> entries = nicknames.get(nickname);
+        return Objects.isNull(entries) ? Collections.emptySet() : Collections.unmodifiableSet(entries);
+    }
+
+    /**
+     * 当前在线数量
+     */
+    public int online() {
+        return sessions.size();
+    }
+
+    public long connectedTotal() {
+        return connected.sum();
+    }
+
+    public long disconnectedTotal() {
+        return disconnected.sum();
+    }
+}
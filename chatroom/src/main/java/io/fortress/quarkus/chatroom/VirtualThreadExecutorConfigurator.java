@@ -0,0 +1,84 @@
+package io.fortress.quarkus.chatroom;
+
+import com.typesafe.config.Config;
+import org.apache.pekko.dispatch.DispatcherPrerequisites;
+import org.apache.pekko.dispatch.ExecutorServiceConfigurator;
+import org.apache.pekko.dispatch.ExecutorServiceFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程执行器
+ * <p>
+ * 每个 Actor 调度任务运行在独立的虚拟线程上, 阻塞写入只会挂起虚拟线程而不会占用载体线程.
+ * 项目以 Java 17 编译, 通过反射获取 {@code Executors.newVirtualThreadPerTaskExecutor};
+ * 运行时低于 Java 21 时记录警告, 退化为 fallback-pool-size 个平台线程的固定线程池.
+ * <pre>
+ * session-virtual-dispatcher {
+ *   type = Dispatcher
+ *   executor = "io.fortress.quarkus.chatroom.VirtualThreadExecutorConfigurator"
+ *   throughput = 1
+ *   fallback-pool-size = 64
+ * }
+ * </pre>
+ */
+public class VirtualThreadExecutorConfigurator extends ExecutorServiceConfigurator {
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(VirtualThreadExecutorConfigurator.class);
+
+    static final MethodHandle VIRTUAL_EXECUTOR = lookup();
+
+    /**
+     * 退化时的平台线程数量
+     */
+    final int fallbackPoolSize;
+
+    public VirtualThreadExecutorConfigurator(Config config, DispatcherPrerequisites prerequisites) {
+        super(config, prerequisites);
+        this.fallbackPoolSize = config.hasPath("fallback-pool-size") ? config.getInt("fallback-pool-size") : 64;
+    }
+
+    @Override
+    public ExecutorServiceFactory createExecutorServiceFactory(String id, ThreadFactory threadFactory) {
+        return () -> create(id, threadFactory);
+    }
+
+    public static boolean isSupported() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    ExecutorService create(String id, ThreadFactory fallback) {
+        if (VIRTUAL_EXECUTOR == null) {
+            // blocking writes would otherwise grow an unbounded platform thread pool
+            logger.warn("Virtual threads require Java 21, dispatcher {} falls back to {} platform threads", id, fallbackPoolSize);
+            return Executors.newFixedThreadPool(fallbackPoolSize, fallback);
+        }
+        try {
+            return (ExecutorService) VIRTUAL_EXECUTOR.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    static MethodHandle lookup() {
+        try {
+            return MethodHandles.publicLookup().findStatic(
+                    Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class)
+            );
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
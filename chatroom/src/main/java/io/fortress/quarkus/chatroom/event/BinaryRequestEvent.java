@@ -1,7 +1,7 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record BinaryRequestEvent(
-        String nickname,
-        byte[] message
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record BinaryRequestEvent(
+        String nickname,
+        byte[] message
+) implements IEvent {
+}
@@ -1,4 +0,0 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record HeartbeatEvent() implements IEvent {
-}
@@ -1,6 +1,6 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record JoinRoomEvent(
-        String nickname
-) implements IEvent {
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record JoinRoomEvent(
+        String nickname
+) implements IEvent {
+}
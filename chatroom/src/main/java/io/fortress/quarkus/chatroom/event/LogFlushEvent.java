@@ -0,0 +1,4 @@
+package io.fortress.quarkus.chatroom.event;
+
+public record LogFlushEvent() implements IEvent {
+}
@@ -0,0 +1,9 @@
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 异步写入完成, failure 为 null 表示成功
+ */
+public record SendCompletedEvent(
+        Throwable failure
+) implements IEvent {
+}
@@ -1,8 +1,8 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record TextRequestEvent(
-        String nickname,
-        String message
-) implements IEvent {
-
-}
+package io.fortress.quarkus.chatroom.event;
+
+public record TextRequestEvent(
+        String nickname,
+        String message
+) implements IEvent {
+
+}
@@ -1,7 +1,24 @@
-package io.fortress.quarkus.chatroom.event;
-
-public record TextResponseEvent(
-        String message
-) implements IEvent {
-
-}
+package io.fortress.quarkus.chatroom.event;
+
+/**
+ * 文本响应帧
+ *
+ * @param message 帧内容
+ * @param line    是否为单行聊天文本; 只有单行文本可以在发送队列满时合并, JSON 和控制帧不能
+ */
+public record TextResponseEvent(
+        String message,
+        boolean line
+) implements IResponseEvent {
+
+    public TextResponseEvent(String message) {
+        this(message, false);
+    }
+
+    /**
+     * 单行聊天文本
+     */
+    public static TextResponseEvent line(String message) {
+        return new TextResponseEvent(message, true);
+    }
+}
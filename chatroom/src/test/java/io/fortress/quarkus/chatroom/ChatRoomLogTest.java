@@ -0,0 +1,162 @@
+package io.fortress.quarkus.chatroom;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+class ChatRoomLogTest {
+
+    static final int SEGMENT_SIZE = 4096;
+    static final int INDEX_INTERVAL = 256;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertEquals(i, log.append(ChatRoomLog.TEXT, 1000L + i, payload(i)));
+            }
+            Assertions.assertEquals(100, log.nextOffset());
+
+            List<ChatRoomLog.Record> records = read(log, 40, 5);
+            Assertions.assertEquals(5, records.size());
+            for (int i = 0; i < 5; i++) {
+                ChatRoomLog.Record record = records.get(i);
+                Assertions.assertEquals(40 + i, record.offset());
+                Assertions.assertEquals(1040L + i, record.timestamp());
+                Assertions.assertEquals(ChatRoomLog.TEXT, record.type());
+                Assertions.assertArrayEquals(payload(40 + i), record.payload());
+            }
+        }
+
+        // reopened: every record survives, appends continue at the next offset
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            Assertions.assertEquals(100, log.nextOffset());
+            Assertions.assertEquals(100, read(log, 0, Integer.MAX_VALUE).size());
+            Assertions.assertEquals(100, log.append(ChatRoomLog.BINARY, 2000L, new byte[]{1, 2, 3}));
+            ChatRoomLog.Record last = read(log, 100, 1).get(0);
+            Assertions.assertEquals(ChatRoomLog.BINARY, last.type());
+            Assertions.assertArrayEquals(new byte[]{1, 2, 3}, last.payload());
+        }
+    }
+
+    @Test
+    public void testReadAcrossSegments() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            for (int i = 0; i < 500; i++) log.append(ChatRoomLog.TEXT, i, payload(i));
+            Assertions.assertTrue(segments().size() > 1);
+
+            List<ChatRoomLog.Record> records = read(log, 0, Integer.MAX_VALUE);
+            Assertions.assertEquals(500, records.size());
+            for (int i = 0; i < 500; i++) Assertions.assertEquals(i, records.get(i).offset());
+        }
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            Assertions.assertEquals(500, log.nextOffset());
+            Assertions.assertEquals(499, read(log, 499, 10).get(0).offset());
+        }
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL, 2, 0)) {
+            for (int i = 0; i < 1000; i++) log.append(ChatRoomLog.TEXT, i, payload(i));
+            Assertions.assertEquals(2, segments().size());
+
+            // the oldest segments are gone, reading from 0 starts at the first retained record
+            List<ChatRoomLog.Record> records = read(log, 0, Integer.MAX_VALUE);
+            Assertions.assertTrue(records.get(0).offset() > 0);
+            Assertions.assertEquals(999, records.get(records.size() - 1).offset());
+        }
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL, 0, SEGMENT_SIZE)) {
+            Assertions.assertEquals(1, segments().size());
+            Assertions.assertEquals(1000, log.nextOffset());
+        }
+    }
+
+    @Test
+    public void testRecoverTornTail() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            for (int i = 0; i < 3; i++) log.append(ChatRoomLog.TEXT, i, payload(i));
+        }
+
+        // a crash after the length was written but before the rest of the record
+        int end = size(0) + size(1) + size(2);
+        write(segments().get(0), end, ByteBuffer.allocate(4).putInt(0, 10));
+
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            Assertions.assertEquals(3, log.nextOffset());
+            Assertions.assertEquals(3, log.append(ChatRoomLog.TEXT, 3, payload(3)));
+            List<ChatRoomLog.Record> records = read(log, 0, Integer.MAX_VALUE);
+            Assertions.assertEquals(4, records.size());
+            Assertions.assertArrayEquals(payload(3), records.get(3).payload());
+        }
+    }
+
+    @Test
+    public void testRecoverCrcMismatch() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            for (int i = 0; i < 3; i++) log.append(ChatRoomLog.TEXT, i, payload(i));
+        }
+
+        // flip the first payload byte of the second record
+        int position = size(0) + ChatRoomLog.HEADER;
+        write(segments().get(0), position, ByteBuffer.wrap(new byte[]{(byte) ~payload(1)[0]}));
+
+        // recovery stops at the corrupted record, everything after it is discarded
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            Assertions.assertEquals(1, log.nextOffset());
+            List<ChatRoomLog.Record> records = read(log, 0, Integer.MAX_VALUE);
+            Assertions.assertEquals(1, records.size());
+            Assertions.assertArrayEquals(payload(0), records.get(0).payload());
+        }
+    }
+
+    @Test
+    public void testOversizedRecord() throws IOException {
+        try (ChatRoomLog log = new ChatRoomLog(directory, SEGMENT_SIZE, INDEX_INTERVAL)) {
+            Assertions.assertTrue(log.fits(SEGMENT_SIZE - ChatRoomLog.HEADER));
+            Assertions.assertFalse(log.fits(SEGMENT_SIZE));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> log.append(ChatRoomLog.TEXT, 0, new byte[SEGMENT_SIZE]));
+            Assertions.assertEquals(0, log.nextOffset());
+        }
+    }
+
+    static byte[] payload(int i) {
+        return "message-%d".formatted(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int size(int i) {
+        return ChatRoomLog.HEADER + payload(i).length;
+    }
+
+    static List<ChatRoomLog.Record> read(ChatRoomLog log, long from, int max) throws IOException {
+        List<ChatRoomLog.Record> records = new ArrayList<>();
+        log.read(from, max, records::add);
+        return records;
+    }
+
+    List<Path> segments() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.filter(file -> file.getFileName().toString().endsWith(ChatRoomLog.SUFFIX)).sorted().toList();
+        }
+    }
+
+    static void write(Path file, int position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.fortress.quarkus.protobuf;
+
+import jakarta.enterprise.inject.spi.CDI;
+import org.apache.pekko.http.javadsl.model.ContentTypes;
+import org.apache.pekko.http.javadsl.model.HttpEntities;
+import org.apache.pekko.http.javadsl.server.AllDirectives;
+import org.apache.pekko.http.javadsl.server.Route;
+import org.apache.pekko.management.javadsl.ManagementRouteProvider;
+import org.apache.pekko.management.javadsl.ManagementRouteProviderSettings;
+
+/**
+ * 入站限流统计的管理接口, 挂载在 pekko management 上
+ * <p>
+ * GET:    /protobuf/limit     本节点累计超限和延迟的帧数量
+ */
+public class LimitRoutes extends AllDirectives implements ManagementRouteProvider {
+
+    @Override
+    public Route routes(ManagementRouteProviderSettings settings) {
+        return pathPrefix("protobuf", () -> path("limit", () -> get(
+                () -> complete(HttpEntities.create(ContentTypes.APPLICATION_JSON, json(limiter())))
+        )));
+    }
+
+    /**
+     * route provider 由 pekko management 反射创建, 通过 CDI 查找限流实例
+     */
+    static ProtobufClusterLimiter limiter() {
+        return CDI.current().select(ProtobufClusterLimiter.class).get();
+    }
+
+    static String json(ProtobufClusterLimiter limiter) {
+        return "{\"action\":\"%s\",\"sessions\":%d,\"throttled\":%d,\"delayed\":%d}".formatted(
+                limiter.action(),
+                limiter.sessions.size(),
+                limiter.throttledTotal(),
+                limiter.delayedTotal()
+        );
+    }
+}
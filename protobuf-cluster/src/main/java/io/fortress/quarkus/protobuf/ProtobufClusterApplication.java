@@ -1,14 +1,14 @@
-package io.fortress.quarkus.protobuf;
-
-import io.quarkus.runtime.Quarkus;
-import io.quarkus.runtime.annotations.QuarkusMain;
-
-/**
- * io.fortress.quarkus.protobuf.ProtobufClusterApplication.java
- */
-@QuarkusMain
-public class ProtobufClusterApplication {
-    public static void main(String[] args) {
-        Quarkus.run(args);
-    }
-}
+package io.fortress.quarkus.protobuf;
+
+import io.quarkus.runtime.Quarkus;
+import io.quarkus.runtime.annotations.QuarkusMain;
+
+/**
+ * io.fortress.quarkus.protobuf.ProtobufClusterApplication.java
+ */
+@QuarkusMain
+public class ProtobufClusterApplication {
+    public static void main(String[] args) {
+        Quarkus.run(args);
+    }
+}
@@ -0,0 +1,45 @@
+package io.fortress.quarkus.protobuf;
+
+import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.time.Duration;
+
+/**
+ * Protobuf 集群配置: protobuf.*
+ */
+@ConfigMapping(prefix = "protobuf")
+public interface ProtobufClusterConfig {
+
+    /**
+     * 入站帧限流
+     */
+    Limit limit();
+
+    interface Limit {
+
+        /**
+         * 每个连接每秒允许的帧数, 0 表示不限
+         */
+        @WithDefault("0")
+        int rate();
+
+        /**
+         * 允许的突发帧数, 0 表示等于 rate
+         */
+        @WithDefault("0")
+        int burst();
+
+        /**
+         * 超出限制时的处理: drop | delay | close
+         */
+        @WithDefault("drop")
+        ProtobufClusterLimiter.Action action();
+
+        /**
+         * delay 时的最长延迟, 超过后丢弃
+         */
+        @WithDefault("1s")
+        Duration maxDelay();
+    }
+}
@@ -0,0 +1,89 @@
+package io.fortress.quarkus.protobuf;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 入站帧限流
+ * <p>
+ * 每个连接一个 {@link TokenBucket}, 帧在交给会话 Actor 之前申请令牌; rate 为 0 时不启用.
+ * 节点级统计使用 LongAdder 分段计数, 通过管理接口 /protobuf/limit 查询, 见 {@link LimitRoutes}.
+ */
+@ApplicationScoped
+public class ProtobufClusterLimiter {
+
+    /**
+     * 超出限制时的处理
+     */
+    public enum Action {
+        /**
+         * 丢弃该帧
+         */
+        DROP,
+        /**
+         * 延迟到令牌可用, 最长 max-delay, 超过后丢弃
+         */
+        DELAY,
+        /**
+         * 关闭连接
+         */
+        CLOSE
+    }
+
+    final ProtobufClusterConfig.Limit config;
+    final long maxWait;
+    final Map<String, TokenBucket> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 累计超出限制的帧数量
+     */
+    final LongAdder throttled = new LongAdder();
+
+    /**
+     * 累计被延迟的帧数量
+     */
+    final LongAdder delayed = new LongAdder();
+
+    public ProtobufClusterLimiter(ProtobufClusterConfig config) {
+        this.config = config.limit();
+        this.maxWait = this.config.action() == Action.DELAY ? this.config.maxDelay().toNanos() : 0;
+    }
+
+    public Action action() {
+        return config.action();
+    }
+
+    public void open(String id) {
+        if (config.rate() > 0) sessions.put(id, new TokenBucket(config.rate(), config.burst() > 0 ? config.burst() : config.rate()));
+    }
+
+    public void close(String id) {
+        sessions.remove(id);
+    }
+
+    /**
+     * 申请一帧
+     *
+     * @return 需要延迟的纳秒数, 0 表示立即通过; 超限时返回 {@link TokenBucket#REJECTED}
+     */
+    public long acquire(String id) {
+        TokenBucket bucket = sessions.get(id);
+        if (Objects.isNull(bucket)) return 0;
+        long wait = bucket.acquire(System.nanoTime(), maxWait);
+        if (wait == TokenBucket.REJECTED) throttled.increment();
+        else if (wait > 0) delayed.increment();
+        return wait;
+    }
+
+    public long throttledTotal() {
+        return throttled.sum();
+    }
+
+    public long delayedTotal() {
+        return delayed.sum();
+    }
+}
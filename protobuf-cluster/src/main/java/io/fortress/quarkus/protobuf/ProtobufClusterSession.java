@@ -1,59 +1,94 @@
-package io.fortress.quarkus.protobuf;
-
-
-import io.quarkus.websockets.next.WebSocketConnection;
-import org.apache.pekko.actor.AbstractActor;
-import org.apache.pekko.event.LoggingAdapter;
-
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-
-
-public class ProtobufClusterSession extends AbstractActor {
-
-    final LoggingAdapter log = context().system().log();
-    final WebSocketConnection connection;
-
-    public ProtobufClusterSession(WebSocketConnection connection) {
-        this.connection = connection;
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(Command.Connected.class, connected -> {
-                    log.info("Connected By Session: {}", connected.getSessionId());
-                })
-                .match(Command.Disconnect.class, disconnected -> {
-                    log.info("Disconnected By Session: {}, Reason: {} - {}", connection.id(), disconnected.getCode(), disconnected.getReason());
-                })
-                .match(Command.Exception.class, e -> {
-                    log.error(e.getMessage());
-                })
-                .match(String.class, message -> {
-                    var msg = Command.TextMessage.parseFrom(message.getBytes(StandardCharsets.UTF_8));
-                    getSelf().tell(msg, getSender());
-                })
-                .match(ByteBuffer.class, byteBuffer -> {
-                    var msg = Command.BytesMessage.parseFrom(byteBuffer.array());
-                    getSelf().tell(msg, getSender());
-                })
-
-                .match(Command.BytesMessage.class, bytes -> {
-                    if (log.isDebugEnabled()) {
-                        if (bytes.getId() == 100) {
-                            log.debug("Received String Message: {}", bytes.getMessage().toStringUtf8());
-                        } else {
-                            log.debug("Bytes Message Request: {} - {}", bytes.getId(), Arrays.toString(bytes.getMessage().toByteArray()));
-                        }
-                    }
-                })
-                .match(Command.TextMessage.class, text -> {
-                    if (log.isDebugEnabled())
-                        log.debug("Text Message Request: {} - {}", text.getId(), text.getMessage());
-
-                })
-                .build();
-    }
-}
+package io.fortress.quarkus.protobuf;
+
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
+import io.quarkus.websockets.next.WebSocketConnection;
+import io.vertx.core.buffer.Buffer;
+import org.apache.pekko.actor.AbstractActor;
+import org.apache.pekko.event.LoggingAdapter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+
+public class ProtobufClusterSession extends AbstractActor {
+
+    final LoggingAdapter log = context().system().log();
+    final WebSocketConnection connection;
+
+    public ProtobufClusterSession(WebSocketConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * 消息处理器
+     */
+    @FunctionalInterface
+    interface Handler {
+        void handle(ProtobufClusterSession session, Command.Envelope envelope) throws Exception;
+    }
+
+    /**
+     * 消息ID -> 处理器, 类加载时构建, 所有会话共享
+     */
+    static final Map<Integer, Handler> HANDLERS = Map.of(
+            100, ProtobufClusterSession::onString
+    );
+
+    /**
+     * 未注册ID的处理器
+     */
+    static final Handler FALLBACK = ProtobufClusterSession::onCommand;
+
+    /**
+     * 零拷贝解析帧
+     * <p>
+     * 直接读取 Vert.x Buffer 底层的 ByteBuf, 并开启 aliasing,
+     * 解析出的 payload 字段与帧共享同一块内存, 不再复制. 入站帧的 Buffer 不会被复用, 可以安全持有.
+     */
+    static Command.Envelope parseEnvelope(Buffer buffer) throws InvalidProtocolBufferException {
+        ByteString frame = UnsafeByteOperations.unsafeWrap(buffer.getByteBuf().nioBuffer());
+        CodedInputStream input = frame.newCodedInput();
+        input.enableAliasing(true);
+        return Command.Envelope.parseFrom(input);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Command.Connected.class, connected -> {
+                    log.info("Connected By Session: {}", connected.getSessionId());
+                })
+                .match(Command.Disconnect.class, disconnected -> {
+                    log.info("Disconnected By Session: {}, Reason: {} - {}", connection.id(), disconnected.getCode(), disconnected.getReason());
+                })
+                .match(Command.Exception.class, e -> {
+                    log.error(e.getMessage());
+                })
+
+                // text and binary frames: decoded once, routed by id
+                .match(Buffer.class, buffer -> {
+                    var envelope = parseEnvelope(buffer);
+                    HANDLERS.getOrDefault(envelope.getId(), FALLBACK).handle(this, envelope);
+                })
+                .build();
+    }
+
+    void onString(Command.Envelope envelope) {
+        if (log.isDebugEnabled())
+            log.debug("Received String Message: {}", envelope.hasText() ? envelope.getText() : envelope.getPayload().toStringUtf8());
+    }
+
+    void onCommand(Command.Envelope envelope) {
+        if (log.isDebugEnabled()) {
+            if (envelope.hasText()) {
+                log.debug("Text Message Request: {} - {}", envelope.getId(), envelope.getText());
+            } else {
+                log.debug("Bytes Message Request: {} - {}", envelope.getId(), Arrays.toString(envelope.getPayload().toByteArray()));
+            }
+        }
+    }
+}
@@ -1,124 +1,151 @@
-package io.fortress.quarkus.protobuf;
-
-
-import com.google.protobuf.ByteString;
-import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
-import io.quarkus.websockets.next.*;
-import jakarta.inject.Inject;
-import org.apache.pekko.actor.ActorRef;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.nio.ByteBuffer;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-
-@WebSocket(path = "/protobuf")
-public class ProtobufClusterWebSocket {
-
-
-    /**
-     * 日志对象
-     */
-    final static Logger logger = LoggerFactory.getLogger(ProtobufClusterWebSocket.class);
-
-
-    /**
-     * 在线会话
-     */
-    final static Map<String, ActorRef> sessions = new ConcurrentHashMap<>();
-
-
-    @Inject
-    ActorContainer actors;
-
-
-    /**
-     * 会话连接
-     *
-     * @param session WebSocketConnection
-     */
-    @OnOpen
-    public void connected(WebSocketConnection session) {
-        logger.info("Connected to websocket: {}", session.id());
-        ActorRef actor = actors.injectOf(session.id(), ProtobufClusterSession.class, () -> new ProtobufClusterSession(session));
-        Command.Connected connected = Command
-                .Connected
-                .newBuilder()
-                .setSessionId(session.id())
-                .build();
-        actor.tell(connected, ActorRef.noSender());
-        sessions.put(session.id(), actor);
-    }
-
-
-    /**
-     * 会话断开
-     *
-     * @param session WebSocketConnection
-     * @param reason  CloseReason
-     */
-    @OnClose
-    public void disconnect(WebSocketConnection session, CloseReason reason) {
-        logger.info("Disconnected from websocket: {}, Reason: {}", session.id(), reason);
-        ActorRef actor = sessions.remove(session.id());
-        if (!Objects.isNull(actor)) {
-            Command.Disconnect disconnect = Command
-                    .Disconnect
-                    .newBuilder()
-                    .setCode(reason.getCode())
-                    .setReason(reason.getMessage() == null ? "" : reason.getMessage())
-                    .build();
-            actor.tell(disconnect, ActorRef.noSender());
-        }
-        actors.remove(session.id());
-    }
-
-
-    /**
-     * 会话异常
-     */
-    @OnError
-    public void error(WebSocketConnection session, Exception e) {
-        logger.error("Error from websocket: {}", session.id(), e);
-        ActorRef actor = sessions.get(session.id());
-        if (!Objects.isNull(actor)) {
-            Command.Exception exception = Command
-                    .Exception
-                    .newBuilder()
-                    .setMessage(e.getMessage() == null ? "" : e.getMessage())
-                    .build();
-            actor.tell(exception, ActorRef.noSender());
-        }
-    }
-
-    /**
-     * 文本消息传递
-     */
-    @OnTextMessage
-    public void textMessage(WebSocketConnection session, String message) {
-        logger.debug("TextMessage from websocket: {}", session.id() + ": " + message);
-        ActorRef actor = sessions.get(session.id());
-        if (!Objects.isNull(actor)) {
-            actor.tell(message, ActorRef.noSender());
-        }
-    }
-
-
-    /**
-     * 二进制消息传递
-     */
-    @OnBinaryMessage
-    public void binaryMessage(WebSocketConnection session, byte[] message) {
-        logger.debug("BinaryMessage from websocket: {}", session.id() + ": " + Arrays.toString(message));
-        ActorRef actor = sessions.get(session.id());
-        if (!Objects.isNull(actor)) {
-            actor.tell(ByteBuffer.wrap(message), ActorRef.noSender());
-        }
-    }
-
-
-}
-
+package io.fortress.quarkus.protobuf;
+
+
+import com.google.protobuf.ByteString;
+import io.fortress.quarkus.pekko.actor.extension.ActorContainer;
+import io.quarkus.websockets.next.*;
+import io.smallrye.mutiny.Uni;
+import io.vertx.core.buffer.Buffer;
+import jakarta.inject.Inject;
+import org.apache.pekko.actor.ActorRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+
+@WebSocket(path = "/protobuf")
+public class ProtobufClusterWebSocket {
+
+
+    /**
+     * 日志对象
+     */
+    final static Logger logger = LoggerFactory.getLogger(ProtobufClusterWebSocket.class);
+
+
+    /**
+     * 在线会话
+     */
+    @Inject
+    SessionRegistry sessions;
+
+
+    @Inject
+    ActorContainer actors;
+
+
+    /**
+     * 入站限流
+     */
+    @Inject
+    ProtobufClusterLimiter limiter;
+
+
+    static final CloseReason RATE_LIMITED = new CloseReason(1008, "Rate limit exceeded");
+
+    static final Uni<Void> DONE = Uni.createFrom().voidItem();
+
+
+    /**
+     * 会话连接
+     *
+     * @param session WebSocketConnection
+     */
+    @OnOpen
+    public void connected(WebSocketConnection session) {
+        logger.info("Connected to websocket: {}", session.id());
+        ActorRef actor = actors.injectOf(session.id(), ProtobufClusterSession.class, () -> new ProtobufClusterSession(session));
+        Command.Connected connected = Command
+                .Connected
+                .newBuilder()
+                .setSessionId(session.id())
+                .build();
+        actor.tell(connected, ActorRef.noSender());
+        sessions.register(session.id(), actor);
+        limiter.open(session.id());
+    }
+
+
+    /**
+     * 会话断开
+     *
+     * @param session WebSocketConnection
+     * @param reason  CloseReason
+     */
+    @OnClose
+    public void disconnect(WebSocketConnection session, CloseReason reason) {
+        logger.info("Disconnected from websocket: {}, Reason: {}", session.id(), reason);
+        SessionRegistry.Entry entry = sessions.unregister(session.id());
+        if (!Objects.isNull(entry)) {
+            Command.Disconnect disconnect = Command
+                    .Disconnect
+                    .newBuilder()
+                    .setCode(reason.getCode())
+                    .setReason(reason.getMessage() == null ? "" : reason.getMessage())
+                    .build();
+            entry.actor().tell(disconnect, ActorRef.noSender());
+        }
+        limiter.close(session.id());
+        actors.remove(session.id());
+    }
+
+
+    /**
+     * 会话异常
+     */
+    @OnError
+    public void error(WebSocketConnection session, Exception e) {
+        logger.error("Error from websocket: {}", session.id(), e);
+        SessionRegistry.Entry entry = sessions.get(session.id());
+        if (!Objects.isNull(entry)) {
+            Command.Exception exception = Command
+                    .Exception
+                    .newBuilder()
+                    .setMessage(e.getMessage() == null ? "" : e.getMessage())
+                    .build();
+            entry.actor().tell(exception, ActorRef.noSender());
+        }
+    }
+
+    /**
+     * 文本消息传递
+     */
+    @OnTextMessage
+    public Uni<Void> textMessage(WebSocketConnection session, Buffer message) {
+        if (logger.isDebugEnabled()) logger.debug("TextMessage from websocket: {} - {}", session.id(), message.length());
+        return dispatch(session, message);
+    }
+
+
+    /**
+     * 二进制消息传递
+     */
+    @OnBinaryMessage
+    public Uni<Void> binaryMessage(WebSocketConnection session, Buffer message) {
+        if (logger.isDebugEnabled()) logger.debug("BinaryMessage from websocket: {} - {}", session.id(), message.length());
+        return dispatch(session, message);
+    }
+
+
+    /**
+     * 限流后交给会话 Actor
+     */
+    Uni<Void> dispatch(WebSocketConnection session, Buffer message) {
+        SessionRegistry.Entry entry = sessions.get(session.id());
+        if (Objects.isNull(entry)) return DONE;
+        long wait = limiter.acquire(session.id());
+        if (wait == 0) {
+            entry.actor().tell(message, ActorRef.noSender());
+            return DONE;
+        }
+        if (wait > 0) {
+            // the frame completes late instead of blocking the event loop
+            return Uni.createFrom().voidItem()
+                    .onItem().delayIt().by(Duration.ofNanos(wait))
+                    .invoke(() -> entry.actor().tell(message, ActorRef.noSender()));
+        }
+        if (limiter.action() == ProtobufClusterLimiter.Action.CLOSE) return session.close(RATE_LIMITED);
+        return DONE;
+    }
+}
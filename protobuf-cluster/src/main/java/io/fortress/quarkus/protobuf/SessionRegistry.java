@@ -0,0 +1,77 @@
+package io.fortress.quarkus.protobuf;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.apache.pekko.actor.ActorRef;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线会话注册表
+ * <p>
+ * 连接建立时保存连接ID到会话 Actor 的映射, 之后每一帧只做一次 O(1) 查找;
+ * 节点级统计使用 LongAdder 分段计数.
+ */
+@ApplicationScoped
+public class SessionRegistry {
+
+    /**
+     * 会话信息
+     *
+     * @param id    连接ID
+     * @param actor 会话 Actor
+     */
+    public record Entry(
+            String id,
+            ActorRef actor
+    ) {
+    }
+
+    final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 累计建立的连接数量
+     */
+    final LongAdder connected = new LongAdder();
+
+    /**
+     * 累计断开的连接数量
+     */
+    final LongAdder disconnected = new LongAdder();
+
+
+    public Entry register(String id, ActorRef actor) {
+        Entry entry = new Entry(id, actor);
+        sessions.put(id, entry);
+        connected.increment();
+        return entry;
+    }
+
+    public Entry unregister(String id) {
+        Entry entry = sessions.remove(id);
+        if (Objects.isNull(entry)) return null;
+        disconnected.increment();
+        return entry;
+    }
+
+    public Entry get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * 当前在线数量
+     */
+    public int online() {
+        return sessions.size();
+    }
+
+    public long connectedTotal() {
+        return connected.sum();
+    }
+
+    public long disconnectedTotal() {
+        return disconnected.sum();
+    }
+}